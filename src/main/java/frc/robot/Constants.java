@@ -7,20 +7,17 @@ package frc.robot;
 import static edu.wpi.first.math.util.Units.inchesToMeters;
 import static frc.robot.Constants.Swerve.Chassis.TRACK_WIDTH_METRES;
 import static frc.robot.Constants.Swerve.Chassis.WHEEL_BASE_METRES;
-import static frc.robot.subsystems.vision.PoseConfidence.HIGH;
-import static frc.robot.subsystems.vision.PoseConfidence.LOW;
-import static frc.robot.subsystems.vision.PoseConfidence.MEDIUM;
 
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
-import frc.robot.subsystems.vision.PoseConfidence;
 
 /**
  * The Constants class provides a convenient place for teams to hold robot-wide
@@ -130,34 +127,42 @@ public final class Constants {
             public double             d;
             public double             ff;
             public double             iz;
+            /** Setpoints closer than this to the last one sent are not sent, in setpoint units */
+            public double             setpointDeadband;
+            /** An unchanged setpoint is sent again after this many seconds */
+            public double             setpointKeepAliveSec;
             public static final Motor DRIVE = new Motor();
 
             static {
-                DRIVE.inverted         = true;
-                DRIVE.currentLimitAmps = 40;
-                DRIVE.nominalVoltage   = 12;
-                DRIVE.rampRate         = 0.25;
-                DRIVE.gearRatio        = 6.75; // SDS MK4i L2 --> 6.75:1
-                DRIVE.p                = 0.11; // 0.0020645;
-                DRIVE.i                = 0;
-                DRIVE.d                = 0;
-                DRIVE.ff               = 0;
-                DRIVE.iz               = 0;
+                DRIVE.inverted             = true;
+                DRIVE.currentLimitAmps     = 40;
+                DRIVE.nominalVoltage       = 12;
+                DRIVE.rampRate             = 0.25;
+                DRIVE.gearRatio            = 6.75;      // SDS MK4i L2 --> 6.75:1
+                DRIVE.p                    = 0.11;      // 0.0020645;
+                DRIVE.i                    = 0;
+                DRIVE.d                    = 0;
+                DRIVE.ff                   = 0;
+                DRIVE.iz                   = 0;
+                DRIVE.setpointDeadband     = 0.005;     // m/s
+                DRIVE.setpointKeepAliveSec = 0.2;
             }
 
             public static final Motor ANGLE = new Motor();
 
             static {
-                ANGLE.inverted         = true;
-                ANGLE.currentLimitAmps = 20;        // must not exceed 30 (fuse)
-                ANGLE.nominalVoltage   = 12;
-                ANGLE.rampRate         = 0.25;
-                ANGLE.gearRatio        = 150.0 / 7; // SDS MK4i 150/7:1
-                ANGLE.p                = 0.0125;    // 0.01
-                ANGLE.i                = 0;
-                ANGLE.d                = 0;
-                ANGLE.ff               = 0;
-                ANGLE.iz               = 0;
+                ANGLE.inverted             = true;
+                ANGLE.currentLimitAmps     = 20;        // must not exceed 30 (fuse)
+                ANGLE.nominalVoltage       = 12;
+                ANGLE.rampRate             = 0.25;
+                ANGLE.gearRatio            = 150.0 / 7; // SDS MK4i 150/7:1
+                ANGLE.p                    = 0.0125;    // 0.01
+                ANGLE.i                    = 0;
+                ANGLE.d                    = 0;
+                ANGLE.ff                   = 0;
+                ANGLE.iz                   = 0;
+                ANGLE.setpointDeadband     = 0.05;      // degrees
+                ANGLE.setpointKeepAliveSec = 0.2;
             }
         }
 
@@ -295,40 +300,106 @@ public final class Constants {
 
     public static final class VisionConstants {
         /** Time to switch pipelines and acquire a new vision target */
-        public static final double  VISION_SWITCH_TIME_SEC         = .25;
+        public static final double  VISION_SWITCH_TIME_SEC            = .25;
 
-        // todo: correct this
-        public static Translation2d CAMERA_LOC_REL_TO_ROBOT_CENTER = new Translation2d(0, 30);
+        public static final class Camera {
+            /** The limelight name, which is also its NetworkTables table (e.g. "limelight-hugh") */
+            public String              name;
+            /**
+             * The location and facing of the camera relative to robot centre. The limelights are
+             * configured with the camera at the robot origin, so botpose is the camera pose on the
+             * field, and this transform converts it to the robot pose.
+             */
+            public Transform2d         robotToCamera;
+            /**
+             * Multiplier applied to the standard deviations of every pose from this camera. Use
+             * values above 1 for cameras with a poorer view or lower resolution.
+             */
+            public double              stdDevScale;
+            /** Height of the camera lens above the floor, used to locate objects on the floor */
+            public double              heightMetres;
+            /** Upward tilt of the camera from horizontal */
+            public double              pitchDeg;
+            public double              horizontalFovDeg;
+            public double              verticalFovDeg;
+            /**
+             * True once robotToCamera, heightMetres and pitchDeg have been measured on the robot.
+             * Until then they are placeholders, and nothing that places objects on the field from
+             * the camera geometry uses the camera.
+             */
+            public boolean             calibrated;
+
+            public static final Camera HUGH = new Camera();
+
+            static {
+                HUGH.name             = "limelight-hugh";
+                // todo: measure the translation. Hugh is on the rear (shooter side) of the bot.
+                HUGH.robotToCamera    = new Transform2d(new Translation2d(0, 0), Rotation2d.fromDegrees(180));
+                HUGH.stdDevScale      = 1;
+                // todo: measure the mounting height and tilt
+                HUGH.heightMetres     = 0.5;
+                HUGH.pitchDeg         = 0;
+                HUGH.horizontalFovDeg = 63.3;
+                HUGH.verticalFovDeg   = 49.7;
+                // set once the todos above are done
+                HUGH.calibrated       = false;
+            }
+
+            /** Every camera used for localization. Add new limelights here. */
+            public static final Camera[] ALL = { HUGH };
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        }
+
+        // todo: measure / tune these values
+        /** Vision x/y standard deviation (metres) for one tag at (nearly) zero distance */
+        public static final double  VISION_XY_STD_METRES              = 0.04;
+        /** Vision heading standard deviation (degrees) for one tag at (nearly) zero distance */
+        public static final double  VISION_HEADING_STD_DEG            = 2;
+        /** A heading from a single tag is unreliable, never trust it more than this */
+        public static final double  VISION_SINGLE_TAG_HEADING_STD_DEG = 30;
+        /** Growth of the standard deviations with the square of the average tag distance */
+        public static final double  VISION_STD_DISTANCE_GROWTH        = 0.15;
+
+        /**
+         * Vision poses whose squared Mahalanobis distance from the odometry pose at capture time
+         * exceeds this are rejected. Chi-squared, 3 degrees of freedom, 99%.
+         */
+        public static final double  VISION_GATE_CHI_SQUARED           = 11.34;
+        /** Growth of the odometry position standard deviation per metre driven */
+        public static final double  ODOMETRY_DRIFT_STD_PER_METRE      = 0.05;
+        /** Growth of the odometry heading standard deviation (degrees) per degree turned */
+        public static final double  ODOMETRY_DRIFT_DEG_PER_DEG        = 0.02;
+        /**
+         * Growth of the odometry position standard deviation with time, in metres per root second,
+         * for the bumps, pushes and wheel slip that odometry does not see
+         */
+        public static final double  ODOMETRY_RANDOM_WALK_STD          = 0.05;
+        /** Growth of the odometry heading standard deviation with time, in degrees per root second */
+        public static final double  ODOMETRY_RANDOM_WALK_DEG          = 0.5;
+        /** How long a history of odometry poses is kept to compare against vision frames */
+        public static final double  ODOMETRY_HISTORY_SEC              = 1.5;
 
         /**
-         * Utility method (STATIC) to map confidence and pose difference to a matrix of estimated
-         * standard
-         * deviations. The returned matrix values have been tuned based on the input and are not
-         * dynamically calculated.
+         * Utility method (STATIC) to map the tags used for a vision pose to a matrix of estimated
+         * standard deviations. The deviation grows with the square of the distance to the tags, and
+         * shrinks with the square root of the number of tags.
          *
-         * @param confidence rating from the vision subsystem
-         * @param poseDifferenceMetres difference between estimated pose and pose from vision
-         * @return matrix of standard deviations, or null if values are too far out of bounds
+         * @param tagCount number of tags used to compute the pose
+         * @param avgTagDistanceMetres average distance to those tags
+         * @return matrix of standard deviations (x and y in metres, heading in radians)
          */
-        public static Matrix<N3, N1> getVisionStandardDeviation(PoseConfidence confidence, double poseDifferenceMetres) {
-            double xyMetresStds;
-            double degreesStds;
-
-            // todo: measure / tune these values
-            if (confidence == HIGH) {
-                xyMetresStds = 0.05;
-                degreesStds  = 2;
-            }
-            else if (confidence == MEDIUM || poseDifferenceMetres < 0.5) {
-                xyMetresStds = 0.15;
-                degreesStds  = 6;
-            }
-            else if (confidence == LOW || poseDifferenceMetres < 0.8) {
-                xyMetresStds = 0.30;
-                degreesStds  = 12;
-            }
-            else { // Covers the Confidence.NONE case
-                return null;
+        public static Matrix<N3, N1> getVisionStandardDeviation(int tagCount, double avgTagDistanceMetres) {
+            double scale        = (1 + VISION_STD_DISTANCE_GROWTH * avgTagDistanceMetres * avgTagDistanceMetres)
+                / Math.sqrt(Math.max(1, tagCount));
+            double xyMetresStds = VISION_XY_STD_METRES * scale;
+            double degreesStds  = VISION_HEADING_STD_DEG * scale;
+
+            if (tagCount < 2) {
+                degreesStds = Math.max(degreesStds, VISION_SINGLE_TAG_HEADING_STD_DEG);
             }
 
             return VecBuilder.fill(xyMetresStds, xyMetresStds, Units.degreesToRadians(degreesStds));
@@ -337,6 +408,12 @@ public final class Constants {
 
     public static final class AutoConstants {
 
+        /**
+         * When the note an auto is going for is gone, go for the nearest other note the robot can
+         * reach in this time instead
+         */
+        public static final double NOTE_SEARCH_SEC = 2;
+
         public static enum AutoPattern {
             SCORE_1_AMP, SCORE_2_AMP, SCORE_1_SPEAKER, SCORE_3_SPEAKER, SCORE_4_SPEAKER
         }
@@ -50,6 +50,7 @@ public class Robot extends TimedRobot {
     /** This function is called once each time the robot enters Disabled mode. */
     @Override
     public void disabledInit() {
+        m_robotContainer.updateRobotMode();
     }
 
     @Override
@@ -61,6 +62,10 @@ public class Robot extends TimedRobot {
      */
     @Override
     public void autonomousInit() {
+        m_robotContainer.updateRobotMode();
+        m_robotContainer.localizeFromVision();
+        m_robotContainer.startVisionRecording();
+        m_robotContainer.resetFieldNotes();
         m_autonomousCommand = m_robotContainer.getAutonomousCommand();
 
         // schedule the autonomous command (example)
@@ -83,6 +88,8 @@ public class Robot extends TimedRobot {
         if (m_autonomousCommand != null) {
             m_autonomousCommand.cancel();
         }
+        m_robotContainer.updateRobotMode();
+        m_robotContainer.startVisionRecording();
     }
 
     /** This function is called periodically during operator control. */
@@ -90,10 +97,17 @@ public class Robot extends TimedRobot {
     public void teleopPeriodic() {
     }
 
+    /** The match is over, a new recording is started for the next one. */
+    @Override
+    public void teleopExit() {
+        m_robotContainer.stopVisionRecording();
+    }
+
     @Override
     public void testInit() {
         // Cancels all running commands at the start of test mode.
         CommandScheduler.getInstance().cancelAll();
+        m_robotContainer.updateRobotMode();
     }
 
     /** This function is called periodically during test mode. */
@@ -109,5 +123,6 @@ public class Robot extends TimedRobot {
     /** This function is called periodically whilst in simulation. */
     @Override
     public void simulationPeriodic() {
+        m_robotContainer.simulationPeriodic();
     }
 }
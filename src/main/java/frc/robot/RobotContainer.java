@@ -8,11 +8,15 @@ import static frc.robot.Constants.UsefulPoses.BLUE_2_2_20;
 import static frc.robot.Constants.UsefulPoses.RED_2_2_20;
 
 import java.io.File;
+import java.io.IOException;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -21,6 +25,7 @@ import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants.AutoConstants.AutoPattern;
 import frc.robot.Constants.OiConstants;
+import frc.robot.Constants.VisionConstants.Camera;
 import frc.robot.commands.CancelCommand;
 import frc.robot.commands.auto.Score1AmpAutoCommand;
 import frc.robot.commands.auto.Score1SpeakerAutoCommand;
@@ -38,6 +43,10 @@ import frc.robot.commands.test.SystemTestCommand;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
 import frc.robot.subsystems.swerve.yagsl.YagslSubsystem;
 import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.FieldLayout;
+import frc.robot.subsystems.vision.LimelightCameraRegistry;
+import frc.robot.subsystems.vision.SimulatedLimelight;
+import frc.robot.subsystems.vision.VisionRecorder;
 
 /**
  * This class is where the bulk of the robot should be declared. Since
@@ -50,18 +59,32 @@ import frc.robot.subsystems.vision.HughVisionSubsystem;
  */
 public class RobotContainer {
     // The robot's subsystems and commands are defined here...
-    private final File                yagslConfig          = new File(Filesystem.getDeployDirectory(), "swerve/neo");
+    private final File                    yagslConfig          = new File(Filesystem.getDeployDirectory(), "swerve/neo");
 
-    private final HughVisionSubsystem hughVisionSubsystem  = new HughVisionSubsystem();
+    private final LimelightCameraRegistry visionCameras        = new LimelightCameraRegistry(Camera.ALL);
 
     // todo: set up sendable chooser for this to toggle implementation for testing
-    private final SwerveSubsystem     swerveDriveSubsystem = new YagslSubsystem(yagslConfig, hughVisionSubsystem);
+    private final SwerveSubsystem         swerveDriveSubsystem = new YagslSubsystem(yagslConfig, visionCameras);
     // private final SwerveSubsystem swerveDriveSubsystem = new
-    // RunnymedeSwerveSubsystem(hughVisionSubsystem);
+    // RunnymedeSwerveSubsystem(visionCameras);
 
-    SendableChooser<AutoPattern>      autoPatternChooser   = new SendableChooser<>();
+    private final HughVisionSubsystem     hughVisionSubsystem  = new HughVisionSubsystem(visionCameras.get(Camera.HUGH),
+        swerveDriveSubsystem::getPoseAt);
 
-    private final OperatorInput       operatorInput        = new OperatorInput(
+    /** Stands in for hugh when running in simulation, null on the robot */
+    private final SimulatedLimelight      simulatedHugh;
+
+    /** Where the vision recordings go. Only a USB stick, the roboRIO disk is too small. */
+    private static final File             VISION_RECORDING_DIR = new File("/U/vision");
+    /** A match is about 20 MB, this leaves room for a long practice session */
+    private static final long             VISION_RECORDING_MAX = 500L * 1024 * 1024;
+
+    /** Records the limelight outputs while the robot is enabled, null when not recording */
+    private VisionRecorder                visionRecorder       = null;
+
+    SendableChooser<AutoPattern>          autoPatternChooser   = new SendableChooser<>();
+
+    private final OperatorInput           operatorInput        = new OperatorInput(
         OiConstants.DRIVER_CONTROLLER_PORT, OiConstants.OPERATOR_CONTROLLER_PORT);
 
     /**
@@ -69,6 +92,14 @@ public class RobotContainer {
      */
     public RobotContainer() {
 
+        if (RobotBase.isSimulation()) {
+            simulatedHugh = new SimulatedLimelight(Camera.HUGH, FieldLayout.get(), SimulatedLimelight.Config.DEFAULT);
+            simulatedHugh.start();
+        }
+        else {
+            simulatedHugh = null;
+        }
+
         // Initialize all Subsystem default commands
         swerveDriveSubsystem.setDefaultCommand(new TeleopDriveCommand(swerveDriveSubsystem, operatorInput));
         // Configure the trigger bindings
@@ -143,6 +174,75 @@ public class RobotContainer {
 
     }
 
+    /**
+     * Feed the simulated robot pose to the simulated cameras. Called from
+     * {@link Robot#simulationPeriodic()}.
+     */
+    public void simulationPeriodic() {
+        if (simulatedHugh != null) {
+            simulatedHugh.updateRobotPose(swerveDriveSubsystem.getPose());
+        }
+    }
+
+    /**
+     * Start the match from the pose found by vision while the robot was disabled, if there is one
+     */
+    public void localizeFromVision() {
+        swerveDriveSubsystem.localizeFromVision();
+    }
+
+    /**
+     * Adapt the subsystems to the robot mode. Call when the robot changes mode.
+     */
+    public void updateRobotMode() {
+        swerveDriveSubsystem.updateRobotMode();
+        hughVisionSubsystem.releasePipelinePreparations();
+    }
+
+    /**
+     * Put the notes back on their placed locations in the note world model, at the start of a match
+     */
+    public void resetFieldNotes() {
+        hughVisionSubsystem.getNoteWorldModel().reset();
+    }
+
+    /**
+     * Start recording the limelight outputs for replay, if not already recording. Recordings are
+     * only written to a USB stick plugged into the roboRIO with room for a full recording. Does
+     * nothing in simulation.
+     */
+    public void startVisionRecording() {
+        if (visionRecorder != null || RobotBase.isSimulation()) {
+            return;
+        }
+        File usb = VISION_RECORDING_DIR.getParentFile();
+        if (!usb.isDirectory() || usb.getUsableSpace() < VISION_RECORDING_MAX) {
+            DriverStation.reportWarning("Not recording vision, no USB stick with "
+                + VISION_RECORDING_MAX / (1024 * 1024) + " MB free at " + usb, false);
+            return;
+        }
+        try {
+            visionRecorder = new VisionRecorder(NetworkTableInstance.getDefault(), VISION_RECORDING_DIR,
+                VISION_RECORDING_MAX);
+        }
+        catch (IOException e) {
+            DriverStation.reportWarning("Unable to record vision to " + VISION_RECORDING_DIR + ": " + e, false);
+        }
+    }
+
+    /**
+     * Stop recording the limelight outputs and close the file, so that each match is in its own
+     * recording.
+     */
+    public void stopVisionRecording() {
+        if (visionRecorder != null) {
+            visionRecorder.close();
+            System.out.println("Recorded " + visionRecorder.getRecordCount() + " vision values to "
+                + visionRecorder.getFile());
+            visionRecorder = null;
+        }
+    }
+
     /**
      * Use this to pass the autonomous command to the main {@link Robot} class.
      *
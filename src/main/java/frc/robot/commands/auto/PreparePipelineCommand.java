@@ -0,0 +1,43 @@
+package frc.robot.commands.auto;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.commands.LoggingCommand;
+import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightPipeline;
+
+/**
+ * Switch hugh to the pipeline a later command of an auto will need, so that the switch and its
+ * warm-up happen while the commands in between run instead of when the pipeline is needed.
+ * <p>
+ * The preparation is made on behalf of the later command, which replaces it with its own need when
+ * it starts and withdraws both when it ends. A preparation only gets the camera while no running
+ * command needs a pipeline. Finishes immediately.
+ */
+public class PreparePipelineCommand extends LoggingCommand {
+
+    private final HughVisionSubsystem hugh;
+    private final Command             next;
+    private final LimelightPipeline   pipeline;
+
+    /**
+     * @param hugh the vision subsystem
+     * @param next the later command that will need the pipeline
+     * @param pipeline the pipeline
+     */
+    public PreparePipelineCommand(HughVisionSubsystem hugh, Command next, LimelightPipeline pipeline) {
+        this.hugh     = hugh;
+        this.next     = next;
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void initialize() {
+        logCommandStart(pipeline + " for " + next.getName());
+        hugh.preparePipeline(next, pipeline);
+    }
+
+    @Override
+    public boolean isFinished() {
+        return true;
+    }
+}
@@ -14,6 +14,7 @@ import frc.robot.commands.swervedrive.DriveToPositionCommand;
 import frc.robot.commands.swervedrive.RotateToPlacedNoteCommand;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
 import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightPipeline;
 
 public class Score2AmpAutoCommand extends SequentialCommandGroup {
 
@@ -25,13 +26,18 @@ public class Score2AmpAutoCommand extends SequentialCommandGroup {
 
         addCommands(new LogMessageCommand("Starting Auto"));
 
+        // start the note detector during the first score, so it is warmed up when the note is needed
+        RotateToPlacedNoteCommand rotateToValjean = new RotateToPlacedNoteCommand(swerve, hugh,
+            BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN);
+
         /* Note 1 */
         addCommands(new DriveToPositionCommand(swerve, SCORE_BLUE_AMP, SCORE_RED_AMP));
+        addCommands(new PreparePipelineCommand(hugh, rotateToValjean, LimelightPipeline.NOTE_DETECTOR));
         addCommands(new FakeScoreAmpCommand());
 
         /* Note 2 */
-        addCommands(new RotateToPlacedNoteCommand(swerve, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
-        addCommands(new FakeVisionNotePickupCommand(swerve, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
+        addCommands(rotateToValjean);
+        addCommands(new FakeVisionNotePickupCommand(swerve, hugh, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
         addCommands(new DriveToPositionCommand(swerve, SCORE_BLUE_AMP, SCORE_RED_AMP));
         addCommands(new FakeScoreAmpCommand());
 
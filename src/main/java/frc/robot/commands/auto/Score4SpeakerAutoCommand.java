@@ -13,6 +13,7 @@ import frc.robot.commands.swervedrive.RotateToPlacedNoteCommand;
 import frc.robot.commands.swervedrive.RotateToTargetCommand;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
 import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightPipeline;
 
 public class Score4SpeakerAutoCommand extends SequentialCommandGroup {
 
@@ -26,31 +27,48 @@ public class Score4SpeakerAutoCommand extends SequentialCommandGroup {
 
         /* ***AUTO PATTERN*** */
 
+        // each pipeline is prepared a command ahead, so it is running and warmed up when it is needed
+        RotateToPlacedNoteCommand rotateToWolverine = new RotateToPlacedNoteCommand(swerve, hugh,
+            BotTarget.BLUE_NOTE_WOLVERINE, BotTarget.RED_NOTE_WOLVERINE);
+        RotateToPlacedNoteCommand rotateToBarnum    = new RotateToPlacedNoteCommand(swerve, hugh,
+            BotTarget.BLUE_NOTE_BARNUM, BotTarget.RED_NOTE_BARNUM);
+        RotateToPlacedNoteCommand rotateToValjean   = new RotateToPlacedNoteCommand(swerve, hugh,
+            BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN);
+        RotateToTargetCommand     rotateToSpeaker2  = RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh);
+        RotateToTargetCommand     rotateToSpeaker3  = RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh);
+        RotateToTargetCommand     rotateToSpeaker4  = RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh);
+
         /* Note 1 */
         // back up to not hit the speaker while rotating
         addCommands(new DriveToPositionCommand(swerve,
             BotTarget.BLUE_SPEAKER.getLocation().toTranslation2d().plus(new Translation2d(1.6, 0)),
             BotTarget.RED_SPEAKER.getLocation().toTranslation2d().plus(new Translation2d(-1.6, 0))));
+        addCommands(new PreparePipelineCommand(hugh, rotateToWolverine, LimelightPipeline.NOTE_DETECTOR));
         addCommands(new FakeScoreSpeakerCommand(swerve));
 
 
         /* Note 2 */
-        addCommands(new RotateToPlacedNoteCommand(swerve, BotTarget.BLUE_NOTE_WOLVERINE, BotTarget.RED_NOTE_WOLVERINE));
-        addCommands(new FakeVisionNotePickupCommand(swerve, BotTarget.BLUE_NOTE_WOLVERINE, BotTarget.RED_NOTE_WOLVERINE));
-        addCommands(RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh));
+        addCommands(rotateToWolverine);
+        addCommands(new PreparePipelineCommand(hugh, rotateToSpeaker2, LimelightPipeline.APRIL_TAGS));
+        addCommands(new FakeVisionNotePickupCommand(swerve, hugh, BotTarget.BLUE_NOTE_WOLVERINE, BotTarget.RED_NOTE_WOLVERINE));
+        addCommands(rotateToSpeaker2);
+        addCommands(new PreparePipelineCommand(hugh, rotateToBarnum, LimelightPipeline.NOTE_DETECTOR));
         addCommands(new FakeScoreSpeakerCommand(swerve));
 
 
         /* Note 3 */
-        addCommands(new RotateToPlacedNoteCommand(swerve, BotTarget.BLUE_NOTE_BARNUM, BotTarget.RED_NOTE_BARNUM));
-        addCommands(new FakeVisionNotePickupCommand(swerve, BotTarget.BLUE_NOTE_BARNUM, BotTarget.RED_NOTE_BARNUM));
-        addCommands(RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh));
+        addCommands(rotateToBarnum);
+        addCommands(new PreparePipelineCommand(hugh, rotateToSpeaker3, LimelightPipeline.APRIL_TAGS));
+        addCommands(new FakeVisionNotePickupCommand(swerve, hugh, BotTarget.BLUE_NOTE_BARNUM, BotTarget.RED_NOTE_BARNUM));
+        addCommands(rotateToSpeaker3);
+        addCommands(new PreparePipelineCommand(hugh, rotateToValjean, LimelightPipeline.NOTE_DETECTOR));
         addCommands(new FakeScoreSpeakerCommand(swerve));
 
         /* Note 4 */
-        addCommands(new RotateToPlacedNoteCommand(swerve, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
-        addCommands(new FakeVisionNotePickupCommand(swerve, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
-        addCommands(RotateToTargetCommand.createRotateToSpeakerCommand(swerve, hugh));
+        addCommands(rotateToValjean);
+        addCommands(new PreparePipelineCommand(hugh, rotateToSpeaker4, LimelightPipeline.APRIL_TAGS));
+        addCommands(new FakeVisionNotePickupCommand(swerve, hugh, BotTarget.BLUE_NOTE_VALJEAN, BotTarget.RED_NOTE_VALJEAN));
+        addCommands(rotateToSpeaker4);
         addCommands(new FakeScoreSpeakerCommand(swerve));
 
         /* Exit Zone */
@@ -1,5 +1,7 @@
 package frc.robot.commands.auto.stubs;
 
+import static frc.robot.Constants.AutoConstants.NOTE_SEARCH_SEC;
+
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
@@ -9,21 +11,34 @@ import frc.robot.commands.swervedrive.BaseDriveCommand;
 import frc.robot.commands.swervedrive.DriveToPositionCommand;
 import frc.robot.commands.swervedrive.DriveToPositionFacingCommand;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
+import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightPipeline;
 
 import static frc.robot.RunnymedeUtils.getRunnymedeAlliance;
 
 public class FakeVisionNotePickupCommand extends BaseDriveCommand {
 
-    private final Translation2d blueLocation;
-    private final Translation2d redLocation;
-    private final Pose2d        bluePose;
-    private final Pose2d        redPose;
+    /**
+     * Closer than this to the pickup location the rest of the approach is finished on the note
+     * location found so far, and the detector is released so the next pipeline can warm up
+     */
+    private static final double       DETECTOR_RELEASE_METRES = 0.5;
+
+    private final HughVisionSubsystem hugh;
+    private final Translation2d       blueLocation;
+    private final Translation2d       redLocation;
+    private final Pose2d              bluePose;
+    private final Pose2d              redPose;
 
-    private Translation2d       location;
-    private Rotation2d          heading;
+    private boolean                   blue;
+    private Translation2d             location;
+    private Rotation2d                heading;
+    private boolean                   detectorReleased;
 
-    public FakeVisionNotePickupCommand(SwerveSubsystem swerve, Constants.BotTarget blueNote, Constants.BotTarget redNote) {
+    public FakeVisionNotePickupCommand(SwerveSubsystem swerve, HughVisionSubsystem hugh, Constants.BotTarget blueNote,
+        Constants.BotTarget redNote) {
         super(swerve);
+        this.hugh         = hugh;
         this.bluePose     = null;
         this.redPose      = null;
         this.blueLocation = blueNote.getLocation().toTranslation2d();
@@ -34,9 +49,10 @@ public class FakeVisionNotePickupCommand extends BaseDriveCommand {
 
     @Override
     public void initialize() {
-        if (getRunnymedeAlliance() == DriverStation.Alliance.Blue) {
+        blue = getRunnymedeAlliance() == DriverStation.Alliance.Blue;
+        if (blue) {
             if (bluePose == null) {
-                location = blueLocation.minus(new Translation2d(.25, 0));
+                location = getNoteLocation().minus(new Translation2d(.25, 0));
                 heading  = swerve.getPose().getRotation();
             }
             else {
@@ -46,7 +62,7 @@ public class FakeVisionNotePickupCommand extends BaseDriveCommand {
         }
         else {
             if (redPose == null) {
-                location = redLocation.plus(new Translation2d(.25, 0));
+                location = getNoteLocation().plus(new Translation2d(.25, 0));
                 heading  = swerve.getPose().getRotation();
             }
             else {
@@ -54,17 +70,36 @@ public class FakeVisionNotePickupCommand extends BaseDriveCommand {
                 heading  = redPose.getRotation();
             }
         }
+        hugh.needPipeline(this, LimelightPipeline.NOTE_DETECTOR);
+        detectorReleased = false;
         logCommandStart("desiredPose: " + new Pose2d(location, heading));
     }
 
     @Override
     public void execute() {
         super.execute();
+
+        if (!detectorReleased) {
+            // follow the note as the detector refines its location, once the detector is running
+            if (hugh.isPipelineReady(LimelightPipeline.NOTE_DETECTOR)) {
+                Translation2d note = getNoteLocation();
+                location = blue ? note.minus(new Translation2d(.25, 0)) : note.plus(new Translation2d(.25, 0));
+            }
+            if (swerve.getPose().getTranslation().getDistance(location) < DETECTOR_RELEASE_METRES) {
+                hugh.releasePipeline(this);
+                detectorReleased = true;
+            }
+        }
+
         driveToFieldPose(new Pose2d(location, heading));
     }
 
     @Override
     public void end(boolean interrupted) {
+        if (!interrupted) {
+            hugh.getNoteWorldModel().notePickedUp(getNoteLocation());
+        }
+        hugh.releasePipeline(this);
         super.end(interrupted);
         swerve.lock();
     }
@@ -74,4 +109,14 @@ public class FakeVisionNotePickupCommand extends BaseDriveCommand {
         super.isFinished();
         return isCloseEnough(location) && isCloseEnough(heading);
     }
+
+    /**
+     * @return the location of the note to pick up from the note world model, or the placed
+     * location if the model has no suitable note
+     */
+    private Translation2d getNoteLocation() {
+        Translation2d placed = blue ? blueLocation : redLocation;
+        Translation2d note   = hugh.getNoteWorldModel().findNote(placed, swerve.getPose(), NOTE_SEARCH_SEC);
+        return note == null ? placed : note;
+    }
 }
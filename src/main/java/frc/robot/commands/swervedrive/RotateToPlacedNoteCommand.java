@@ -1,43 +1,47 @@
 package frc.robot.commands.swervedrive;
 
-import static frc.robot.Constants.Swerve.Chassis.ROTATION_TOLERANCE;
+import static frc.robot.Constants.AutoConstants.NOTE_SEARCH_SEC;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants;
 import frc.robot.RunnymedeUtils;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
+import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightPipeline;
 
 public class RotateToPlacedNoteCommand extends BaseDriveCommand {
 
+    private final HughVisionSubsystem hugh;
     private final Constants.BotTarget blueTarget;
     private final Constants.BotTarget redTarget;
     private Pose2d                    initialPose;
     private Constants.BotTarget       target = null;
 
     /**
-     * Turn the robot to face the vision target specified
+     * Turn the robot to face the note specified. The note is aimed at where the vision subsystem
+     * has seen it, otherwise at its placed location. If the note is known to be gone, the nearest
+     * other note is aimed at instead.
      *
      * @param swerve the swerve drive subsystem
+     * @param hugh the vision subsystem tracking the notes
      */
-    public RotateToPlacedNoteCommand(SwerveSubsystem swerve, Constants.BotTarget blueTarget, Constants.BotTarget redTarget) {
+    public RotateToPlacedNoteCommand(SwerveSubsystem swerve, HughVisionSubsystem hugh, Constants.BotTarget blueTarget,
+        Constants.BotTarget redTarget) {
         super(swerve);
-        // this.hugh = hugh;
+        this.hugh        = hugh;
         this.blueTarget  = blueTarget;
         this.redTarget   = redTarget;
         this.initialPose = null;
-        // addRequirements(hugh);
-
     }
 
     @Override
     public void initialize() {
         this.target = RunnymedeUtils.getRunnymedeAlliance() == DriverStation.Alliance.Blue ? blueTarget : redTarget;
         logCommandStart("Target: " + target);
-        // hugh.setBotTarget(target);
+        hugh.needPipeline(this, LimelightPipeline.NOTE_DETECTOR);
         this.initialPose = swerve.getPose();
     }
 
@@ -45,32 +49,32 @@ public class RotateToPlacedNoteCommand extends BaseDriveCommand {
     public void execute() {
         super.execute();
 
-        Translation2d robotRelativeTranslation = null;// jackman.getRobotTranslationToTarget();
-
-        if (robotRelativeTranslation == null) {
-            Rotation2d delta = getHeadingToFieldPosition(target.getLocation().toTranslation2d());
-            Rotation2d omega = computeOmega(delta);
-            swerve.driveFieldOriented(new Translation2d(), omega);
-        }
-        else {
-            Rotation2d omega = computeOmega(robotRelativeTranslation.getAngle());
-            swerve.driveRobotOriented(new ChassisSpeeds(0, 0, omega.getRadians()));
-        }
+        Rotation2d delta = getHeadingToFieldPosition(getNoteLocation());
+        Rotation2d omega = computeOmega(delta);
+        swerve.driveFieldOriented(new Translation2d(), omega);
+    }
 
+    @Override
+    public void end(boolean interrupted) {
+        hugh.releasePipeline(this);
+        super.end(interrupted);
     }
 
     @Override
     public boolean isFinished() {
 
-        Translation2d robotRelativeTranslation = null; // jackman.getRobotTranslationToTarget();
-        if (robotRelativeTranslation == null) {
-            Rotation2d delta = getHeadingToFieldPosition(target.getLocation().toTranslation2d());
-            return isCloseEnough(delta);
-        }
-        else {
-            return Math.abs(robotRelativeTranslation.getAngle().getRadians()) <= ROTATION_TOLERANCE.getRadians();
-        }
+        Rotation2d delta = getHeadingToFieldPosition(getNoteLocation());
+        return isCloseEnough(delta);
+    }
 
+    /**
+     * @return the location of the note to face from the note world model, or the placed location of
+     * the target note if the model has no suitable note
+     */
+    private Translation2d getNoteLocation() {
+        Translation2d placed = target.getLocation().toTranslation2d();
+        Translation2d note   = hugh.getNoteWorldModel().findNote(placed, swerve.getPose(), NOTE_SEARCH_SEC);
+        return note == null ? placed : note;
     }
 
-}
\ No newline at end of file
+}
@@ -1,25 +1,40 @@
 package frc.robot.commands.swervedrive;
 
-import static frc.robot.Constants.Swerve.Chassis.ROTATION_TOLERANCE;
 import static frc.robot.RunnymedeUtils.getRunnymedeAlliance;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants.BotTarget;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
 import frc.robot.subsystems.vision.HughVisionSubsystem;
-
-
+import frc.robot.subsystems.vision.LimelightPipeline;
+import frc.robot.subsystems.vision.TargetSolution;
+
+/**
+ * Turn the robot so that hugh faces a target.
+ * <p>
+ * Each new vision solution is turned into a field heading using the robot heading at the time the
+ * frame was captured, so the age of the frame does not matter. The robot then turns to that heading
+ * on the odometry heading, which the gyro updates every loop, and only re-targets when the next
+ * frame arrives. Without vision the heading is computed from the odometry position.
+ */
 public class RotateToTargetCommand extends BaseDriveCommand {
 
+    /** Consecutive aligned loops required to finish */
+    private static final int          ALIGNED_LOOPS      = 3;
+
     private final HughVisionSubsystem hugh;
     private final BotTarget           blueTarget;
     private final BotTarget           redTarget;
     private BotTarget                 target;
     private final boolean             forwards;
-    int                               alignedCount = 0;
+    int                               alignedCount       = 0;
+
+    /** The field heading that faces hugh to the target, from vision. Null until the target is seen. */
+    private Rotation2d                visionHeading      = null;
+    private double                    lastSolutionTime   = Double.NaN;
 
 
     public static RotateToTargetCommand createRotateToSpeakerCommand(SwerveSubsystem swerve, HughVisionSubsystem hugh) {
@@ -63,7 +78,11 @@ public class RotateToTargetCommand extends BaseDriveCommand {
         }
         logCommandStart("Target: " + target);
         hugh.setBotTarget(target);
-        alignedCount = 0;
+        hugh.needPipeline(this, LimelightPipeline.APRIL_TAGS);
+        hugh.needTagDetail(this);
+        alignedCount     = 0;
+        visionHeading    = null;
+        lastSolutionTime = Double.NaN;
     }
 
 
@@ -71,48 +90,57 @@ public class RotateToTargetCommand extends BaseDriveCommand {
     public void execute() {
         super.execute();
 
-        Rotation2d targetOffset = hugh.getTargetOffset();
-        if (targetOffset == null) {
-            Rotation2d heading    = super.getHeadingToFieldPosition(target.getLocation().toTranslation2d())
-                .plus(Rotation2d.fromDegrees(180 * (forwards ? 0 : 1)));
-            // log("Heading to speaker: " + heading + " from location " +
-            // swerve.getPose().getTranslation() + " for speaker " + speaker);
-            Pose2d     targetPose = new Pose2d(swerve.getPose().getTranslation(), heading);
-            driveToFieldPose(targetPose);
+        updateVisionHeading();
+        Rotation2d heading = visionHeading != null ? visionHeading : getOdometryHeading();
+        swerve.driveFieldOriented(new Translation2d(), computeOmega(heading));
+    }
+
+    /**
+     * Re-target when a new vision solution arrives. The bearing to the target is relative to where
+     * the robot was facing when the frame was captured, not where it faces now. Nothing is taken
+     * from the camera until the AprilTag pipeline is running and past its warm-up.
+     */
+    private void updateVisionHeading() {
+        if (!hugh.isPipelineReady(LimelightPipeline.APRIL_TAGS)) {
+            return;
         }
-        else {
-            // System.out.println("vision");
-            Rotation2d omega = computeOmegaForOffset(targetOffset);
-            System.out
-                .println("offset: " + format(targetOffset) + " heading: " + format(swerve.getPose().getRotation()) + " omage: "
-                    + format(omega));
-            swerve.driveRobotOriented(new ChassisSpeeds(0, 0, omega.getRadians()));
+        TargetSolution solution = hugh.getTargetSolution();
+        if (solution == null || solution.timestampSeconds() == lastSolutionTime) {
+            return;
         }
+        lastSolutionTime = solution.timestampSeconds();
+
+        Rotation2d headingAtCapture = swerve.getPoseAt(solution.timestampSeconds())
+            .map(Pose2d::getRotation)
+            .orElse(swerve.getPose().getRotation());
+        visionHeading = headingAtCapture.plus(solution.cameraBearing());
+    }
+
+    /**
+     * @return the heading that faces hugh to the target from the odometry position
+     */
+    private Rotation2d getOdometryHeading() {
+        return super.getHeadingToFieldPosition(target.getLocation().toTranslation2d())
+            .plus(Rotation2d.fromDegrees(180 * (forwards ? 0 : 1)));
     }
 
 
     @Override
-    public boolean isFinished() {
-        // todo: use heading from hugh
-        if (isAligned()) {
-            alignedCount++;
-        }
-        else {
-            alignedCount = 0;
-        }
-        return alignedCount >= 10;
+    public void end(boolean interrupted) {
+        hugh.releasePipeline(this);
+        hugh.releaseTagDetail(this);
+        super.end(interrupted);
     }
 
 
-    private boolean isAligned() {
-        Rotation2d targetOffset = hugh.getTargetOffset();
-        if (targetOffset == null) {
-            Rotation2d heading = super.getHeadingToFieldPosition(target.getLocation().toTranslation2d())
-                .plus(Rotation2d.fromDegrees(180 * (forwards ? 1 : -1)));
-            return isCloseEnough(heading);
+    @Override
+    public boolean isFinished() {
+        if (isCloseEnough(visionHeading != null ? visionHeading : getOdometryHeading())) {
+            alignedCount++;
         }
         else {
-            return Math.abs(targetOffset.getDegrees()) <= ROTATION_TOLERANCE.getDegrees();
+            alignedCount = 0;
         }
+        return alignedCount >= ALIGNED_LOOPS;
     }
-}
\ No newline at end of file
+}
@@ -2,8 +2,8 @@ package frc.robot.subsystems.swerve;
 
 import static frc.robot.Constants.Swerve.Chassis.MAX_ROTATION_ACCELERATION_RAD_PER_SEC2;
 import static frc.robot.Constants.Swerve.Chassis.MAX_TRANSLATION_ACCELERATION_MPS2;
-import static frc.robot.Constants.VisionConstants.CAMERA_LOC_REL_TO_ROBOT_CENTER;
-import static frc.robot.Constants.VisionConstants.getVisionStandardDeviation;
+
+import java.util.Optional;
 
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.filter.SlewRateLimiter;
@@ -11,27 +11,32 @@ import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
 import frc.robot.commands.LoggingCommand;
-import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightCameraRegistry;
+import frc.robot.subsystems.vision.VisionMetrics;
 import frc.robot.subsystems.vision.VisionPositionInfo;
 
 public abstract class SwerveSubsystem extends SubsystemBase {
 
-    private final HughVisionSubsystem visionSubsystem;
+    private final LimelightCameraRegistry visionCameras;
+    private final VisionPoseGate          visionGate    = new VisionPoseGate();
+    private final VisionBootLocalizer     bootLocalizer = new VisionBootLocalizer();
 
-    private final SlewRateLimiter     xLimiter     = new SlewRateLimiter(MAX_TRANSLATION_ACCELERATION_MPS2);
-    private final SlewRateLimiter     yLimiter     = new SlewRateLimiter(MAX_TRANSLATION_ACCELERATION_MPS2);
-    private final SlewRateLimiter     omegaLimiter = new SlewRateLimiter(MAX_ROTATION_ACCELERATION_RAD_PER_SEC2);
+    private final SlewRateLimiter         xLimiter      = new SlewRateLimiter(MAX_TRANSLATION_ACCELERATION_MPS2);
+    private final SlewRateLimiter         yLimiter      = new SlewRateLimiter(MAX_TRANSLATION_ACCELERATION_MPS2);
+    private final SlewRateLimiter         omegaLimiter  = new SlewRateLimiter(MAX_ROTATION_ACCELERATION_RAD_PER_SEC2);
 
-    public SwerveSubsystem(HughVisionSubsystem visionSubsystem) {
-        this.visionSubsystem = visionSubsystem;
+    public SwerveSubsystem(LimelightCameraRegistry visionCameras) {
+        this.visionCameras = visionCameras;
     }
 
     /**
@@ -113,6 +118,32 @@ public abstract class SwerveSubsystem extends SubsystemBase {
      */
     public abstract Pose2d getPose();
 
+    /**
+     * Gets the estimated pose of the robot at a recent time, e.g. when a camera frame was
+     * captured. The history covers {@link Constants.VisionConstants#ODOMETRY_HISTORY_SEC}.
+     *
+     * @param timestampSeconds the FPGA time
+     * @return the pose, interpolated between loops, or empty if there is no history
+     */
+    public Optional<Pose2d> getPoseAt(double timestampSeconds) {
+        return visionGate.getPose(timestampSeconds);
+    }
+
+    /**
+     * Gets the position of each module as read from its encoders, for detecting motion without the
+     * vision corrections that move the estimated pose.
+     *
+     * @return the module positions, in the same order every call
+     */
+    protected abstract SwerveModulePosition[] getModulePositions();
+
+    /**
+     * Gets the heading as read from the gyro, without the vision corrections.
+     *
+     * @return the gyro heading
+     */
+    protected abstract Rotation2d getGyroHeading();
+
     /**
      * Resets the gyro angle to zero and resets odometry to the same position, but
      * facing toward 0.
@@ -141,39 +172,85 @@ public abstract class SwerveSubsystem extends SubsystemBase {
 
     /**
      * Update the field relative position of the robot using vision
-     * position data returned from the vision subsystem.
+     * position data returned from the vision cameras. Every frame from every
+     * camera received since the last loop is fused, in capture order, and each
+     * camera frame is only ever fused into the estimator once (the cameras drop
+     * frames the limelight publishes again). Frames that are
+     * statistically inconsistent with the estimated pose at their capture time are
+     * rejected.
      *
-     * @see frc.robot.Constants.VisionConstants#getVisionStandardDeviation(frc.robot.subsystems.vision.PoseConfidence,
-     * double) fortuning info
+     * @see VisionPoseGate
+     * @see frc.robot.Constants.VisionConstants#getVisionStandardDeviation(int, double) for tuning info
      */
     private void updateOdometryWithVisionInfo() {
-        VisionPositionInfo visPose = visionSubsystem.getPositionInfo();
-
-        // ignore unreliable info from vision subsystem
-        if (visPose == null) {
-            SmartDashboard.putString("Drive/Swerve/vispose", "");
-            return;
+        for (VisionPositionInfo visPose : visionCameras.drainNewPositionInfo()) {
+            updateOdometryWithVisionInfo(visPose);
         }
+    }
 
-        // convert camera pose to robot pose
-        Pose2d         robotPose = new Pose2d(visPose.pose().getTranslation().minus(CAMERA_LOC_REL_TO_ROBOT_CENTER),
-            visPose.pose().getRotation());
+    private void updateOdometryWithVisionInfo(VisionPositionInfo visPose) {
+        VisionMetrics metrics = visionCameras.get(visPose.camera()).getMetrics();
 
-        // how different is vision data from estimated data?
-        double         delta_m   = getPose().getTranslation().getDistance(robotPose.getTranslation());
+        // while disabled the robot is still, and the frames are gathered to find where it is
+        if (DriverStation.isDisabled()) {
+            bootLocalizer.add(visPose);
+        }
 
-        Matrix<N3, N1> stds      = getVisionStandardDeviation(visPose.poseConfidence(), delta_m);
+        // how consistent is vision data with the estimate at the time of capture?
+        Matrix<N3, N1> stds    = visionGate.evaluate(visPose);
 
-        // ignore drastically different data
+        // ignore outliers
         if (stds == null) {
+            metrics.recordGateRejected();
             SmartDashboard.putString("Drive/Swerve/vispose", "");
             return;
         }
 
-        double timeInSeconds = Timer.getFPGATimestamp() - (visPose.latencyMillis() / 1000);
-
         SmartDashboard.putString("Drive/Swerve/vispose", visPose.toString());
-        this.addVisionMeasurement(visPose.pose(), timeInSeconds, stds);
+        this.addVisionMeasurement(visPose.pose(), visPose.timestampSeconds(), stds);
+        visionGate.accepted(stds);
+        metrics.recordFused(Timer.getFPGATimestamp() - visPose.timestampSeconds());
+    }
+
+    /**
+     * While disabled, replace the estimated pose with the consensus of the recent vision frames when
+     * the two disagree, so that the robot is localized before the match starts instead of converging
+     * once it is moving.
+     */
+    private void updateBootLocalization() {
+        bootLocalizer.update(getModulePositions(), getGyroHeading());
+        Pose2d pose      = getPose();
+        Pose2d consensus = bootLocalizer.getConsensus(Timer.getFPGATimestamp());
+        if (consensus != null && VisionBootLocalizer.differs(consensus, pose)) {
+            System.out.println("Localized from vision: " + LoggingCommand.format(consensus) + " was "
+                + LoggingCommand.format(pose));
+            resetOdometry(consensus);
+            bootLocalizer.clear();
+        }
+        SmartDashboard.putString("Drive/Swerve/vision/bootLocalization",
+            bootLocalizer.getInlierCount() + "/" + bootLocalizer.getFrameCount() + " frames agree");
+    }
+
+    /**
+     * Replace the estimated pose with the consensus of the vision frames seen while the robot was
+     * disabled, if there is one. Call when the robot is enabled, before it moves.
+     *
+     * @return true if the pose was replaced
+     */
+    public boolean localizeFromVision() {
+        Pose2d consensus = bootLocalizer.getConsensus(Timer.getFPGATimestamp());
+        bootLocalizer.clear();
+        if (consensus == null) {
+            return false;
+        }
+        resetOdometry(consensus);
+        return true;
+    }
+
+    /**
+     * Adapt the drive to the robot mode. Call when the robot changes mode.
+     */
+    public void updateRobotMode() {
     }
 
     public abstract void updateTelemetry();
@@ -193,8 +270,14 @@ public abstract class SwerveSubsystem extends SubsystemBase {
     public void periodic() {
         super.periodic();
         updateOdometryWithStates();
+        visionGate.addPose(Timer.getFPGATimestamp(), getPose());
         updateOdometryWithVisionInfo();
+        if (DriverStation.isDisabled()) {
+            updateBootLocalization();
+        }
         updateTelemetry();
+        visionGate.updateTelemetry();
+        visionCameras.publishMetrics(Timer.getFPGATimestamp());
         Pose2d pose = getPose();
         SmartDashboard.putString("Drive/Swerve/location",
             String.format("%.2f,%.2f m", pose.getTranslation().getX(), pose.getTranslation().getY()));
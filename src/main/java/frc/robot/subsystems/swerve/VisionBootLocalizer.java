@@ -0,0 +1,218 @@
+package frc.robot.subsystems.swerve;
+
+import java.util.Arrays;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.subsystems.vision.PoseConfidence;
+import frc.robot.subsystems.vision.VisionPositionInfo;
+
+/**
+ * Finds the robot pose from vision while the robot is disabled, so that a match starts from where
+ * the robot actually is instead of the origin.
+ * <p>
+ * High confidence vision poses from the last {@link #WINDOW_SEC} are kept while the robot is still.
+ * The consensus is the median of their position and heading, which a few bad frames cannot drag,
+ * refined by averaging the frames that agree with the median. It is only reported when enough
+ * frames agree. If the wheel encoders or the gyro show the robot being moved, the frames are stale
+ * and are discarded. Motion is judged from those raw readings rather than the estimated pose, since
+ * the vision frames fused while disabled move the estimate of a robot that is standing still.
+ * <p>
+ * The frames are held in preallocated arrays. Not thread safe, used from the robot loop.
+ */
+class VisionBootLocalizer {
+
+    private static final int    WINDOW_SIZE         = 64;
+    private static final double WINDOW_SEC          = 3.0;
+
+    /** The fewest frames a consensus is computed from */
+    private static final int    MIN_FRAMES          = 15;
+    /** The fraction of the frames that must agree with the median */
+    private static final double MIN_INLIER_FRACTION = 0.7;
+    private static final double INLIER_METRES       = 0.10;
+    private static final double INLIER_RAD          = Math.toRadians(3);
+
+    /** The robot moving this far means it was picked up or pushed, and the frames are stale */
+    private static final double MAX_MOTION_METRES   = 0.05;
+    private static final double MAX_MOTION_RAD      = Math.toRadians(2);
+
+    /** The estimate is only replaced when the consensus differs from it by more than this */
+    private static final double COMMIT_METRES       = 0.05;
+    private static final double COMMIT_RAD          = Math.toRadians(2);
+
+    // ring of frames, oldest first from head
+    private final double[]      frameX              = new double[WINDOW_SIZE];
+    private final double[]      frameY              = new double[WINDOW_SIZE];
+    private final double[]      frameHeading        = new double[WINDOW_SIZE];
+    private final double[]      frameTime           = new double[WINDOW_SIZE];
+    private int                 head                = 0;
+    private int                 count               = 0;
+
+    // scratch for the medians
+    private final double[]      scratch             = new double[WINDOW_SIZE];
+
+    /** The drive distance of each module when the robot was last known to be still */
+    private double[]            stillDistances      = new double[0];
+    /** The gyro heading when the robot was last known to be still, or null */
+    private Rotation2d          stillHeading        = null;
+
+    private int                 lastFrameCount      = 0;
+    private int                 lastInlierCount     = 0;
+
+    /**
+     * Check the robot has not moved since the frames were taken. Call once per loop.
+     *
+     * @param modulePositions the module positions read from the drive and angle encoders
+     * @param gyroHeading the heading read from the gyro
+     */
+    void update(SwerveModulePosition[] modulePositions, Rotation2d gyroHeading) {
+        if (stillHeading != null && stillDistances.length == modulePositions.length) {
+            double moved = 0;
+            for (int i = 0; i < modulePositions.length; i++) {
+                moved = Math.max(moved, Math.abs(modulePositions[i].distanceMeters - stillDistances[i]));
+            }
+            double turned = Math.abs(gyroHeading.minus(stillHeading).getRadians());
+            if (moved > MAX_MOTION_METRES || turned > MAX_MOTION_RAD) {
+                clear();
+            }
+        }
+        if (stillHeading == null || stillDistances.length != modulePositions.length) {
+            if (stillDistances.length != modulePositions.length) {
+                stillDistances = new double[modulePositions.length];
+            }
+            for (int i = 0; i < modulePositions.length; i++) {
+                stillDistances[i] = modulePositions[i].distanceMeters;
+            }
+            stillHeading = gyroHeading;
+        }
+    }
+
+    /**
+     * Add a vision pose. Only high confidence poses are used.
+     *
+     * @param info the vision pose
+     */
+    void add(VisionPositionInfo info) {
+        if (info.poseConfidence() != PoseConfidence.HIGH) {
+            return;
+        }
+        int i = (head + count) % WINDOW_SIZE;
+        if (count == WINDOW_SIZE) {
+            head = (head + 1) % WINDOW_SIZE;
+        }
+        else {
+            count++;
+        }
+        frameX[i]       = info.pose().getX();
+        frameY[i]       = info.pose().getY();
+        frameHeading[i] = info.pose().getRotation().getRadians();
+        frameTime[i]    = info.timestampSeconds();
+    }
+
+    /**
+     * Discard every frame, e.g. after the pose has been committed to the estimator
+     */
+    void clear() {
+        head         = 0;
+        count        = 0;
+        stillHeading = null;
+    }
+
+    /**
+     * Compute the consensus pose of the recent frames
+     *
+     * @param now the current FPGA time
+     * @return the pose, or null if there are too few frames or they do not agree
+     */
+    Pose2d getConsensus(double now) {
+        // drop the frames that are too old
+        while (count > 0 && frameTime[head] < now - WINDOW_SEC) {
+            head = (head + 1) % WINDOW_SIZE;
+            count--;
+        }
+        lastFrameCount  = count;
+        lastInlierCount = 0;
+        if (count < MIN_FRAMES) {
+            return null;
+        }
+
+        // headings are taken relative to the first frame so that the median does not wrap
+        double reference     = frameHeading[head];
+        double medianX       = median(frameX);
+        double medianY       = median(frameY);
+        double medianHeading = medianHeading(reference);
+
+        int    inliers       = 0;
+        double sumX          = 0;
+        double sumY          = 0;
+        double sumHeading    = 0;
+        for (int k = 0; k < count; k++) {
+            int    i       = (head + k) % WINDOW_SIZE;
+            double heading = relative(frameHeading[i], reference);
+            if (Math.hypot(frameX[i] - medianX, frameY[i] - medianY) <= INLIER_METRES
+                && Math.abs(heading - medianHeading) <= INLIER_RAD) {
+                inliers++;
+                sumX       += frameX[i];
+                sumY       += frameY[i];
+                sumHeading += heading;
+            }
+        }
+        lastInlierCount = inliers;
+        if (inliers < MIN_INLIER_FRACTION * count) {
+            return null;
+        }
+        return new Pose2d(sumX / inliers, sumY / inliers, new Rotation2d(reference + sumHeading / inliers));
+    }
+
+    /**
+     * @param consensus the consensus pose
+     * @param estimate the estimated pose
+     * @return true if the consensus differs enough from the estimate to replace it
+     */
+    static boolean differs(Pose2d consensus, Pose2d estimate) {
+        return consensus.getTranslation().getDistance(estimate.getTranslation()) > COMMIT_METRES
+            || Math.abs(consensus.getRotation().minus(estimate.getRotation()).getRadians()) > COMMIT_RAD;
+    }
+
+    /**
+     * @return the number of frames in the last consensus
+     */
+    int getFrameCount() {
+        return lastFrameCount;
+    }
+
+    /**
+     * @return the number of frames that agreed with the median in the last consensus
+     */
+    int getInlierCount() {
+        return lastInlierCount;
+    }
+
+    private double median(double[] values) {
+        for (int k = 0; k < count; k++) {
+            scratch[k] = values[(head + k) % WINDOW_SIZE];
+        }
+        return sortedMedian();
+    }
+
+    /**
+     * @return the median heading of the frames, relative to the reference heading
+     */
+    private double medianHeading(double reference) {
+        for (int k = 0; k < count; k++) {
+            scratch[k] = relative(frameHeading[(head + k) % WINDOW_SIZE], reference);
+        }
+        return sortedMedian();
+    }
+
+    private double sortedMedian() {
+        Arrays.sort(scratch, 0, count);
+        return count % 2 == 1 ? scratch[count / 2] : (scratch[count / 2 - 1] + scratch[count / 2]) / 2;
+    }
+
+    private static double relative(double heading, double reference) {
+        return MathUtil.angleModulus(heading - reference);
+    }
+}
@@ -0,0 +1,217 @@
+package frc.robot.subsystems.swerve;
+
+import static frc.robot.Constants.VisionConstants.ODOMETRY_DRIFT_DEG_PER_DEG;
+import static frc.robot.Constants.VisionConstants.ODOMETRY_DRIFT_STD_PER_METRE;
+import static frc.robot.Constants.VisionConstants.ODOMETRY_HISTORY_SEC;
+import static frc.robot.Constants.VisionConstants.ODOMETRY_RANDOM_WALK_DEG;
+import static frc.robot.Constants.VisionConstants.ODOMETRY_RANDOM_WALK_STD;
+import static frc.robot.Constants.VisionConstants.VISION_GATE_CHI_SQUARED;
+import static frc.robot.Constants.VisionConstants.getVisionStandardDeviation;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.subsystems.vision.VisionPositionInfo;
+
+/**
+ * Statistical gate between the vision cameras and the pose estimator.
+ * <p>
+ * Each vision pose is compared with the estimated pose at the time the image was captured (not the
+ * current pose), using the squared Mahalanobis distance: the residual in each axis divided by the
+ * combined variance of the estimate and the measurement. Poses beyond the chi-squared threshold
+ * are rejected before they reach the estimator, which would otherwise replay its history for them.
+ * <p>
+ * The estimator does not expose its covariance, so it is approximated here. The variance of the
+ * estimate grows with the distance driven and the angle turned, and with time for the bumps and
+ * wheel slip odometry cannot see, and shrinks with each accepted measurement as it would in a
+ * Kalman filter update.
+ * <p>
+ * If the estimate is knocked off (a push, or slip the variance did not allow for), every frame would
+ * be rejected from then on. So when {@link #RECOVERY_FRAMES} frames in a row are rejected and agree
+ * with each other on where the estimate is wrong, the estimate is treated as unknown again and the
+ * frame is accepted.
+ */
+public class VisionPoseGate {
+
+    /** Variance used when the estimate is unknown (startup, odometry reset), which passes anything */
+    private static final double                     UNKNOWN_VARIANCE       = 1e6;
+
+    /** A pose jump larger than this between two loops is an odometry reset, not motion */
+    private static final double                     ODOMETRY_RESET_METRES  = 1.0;
+
+    /** Rejected frames in a row that, if they agree, show the estimate is wrong rather than them */
+    private static final int                        RECOVERY_FRAMES        = 5;
+    /** Rejected frames agree if their residuals are all within this of the mean residual */
+    private static final double                     RECOVERY_METRES        = 0.15;
+    private static final double                     RECOVERY_RAD           = Math.toRadians(5);
+
+    private final TimeInterpolatableBuffer<Pose2d> history                = TimeInterpolatableBuffer
+        .createBuffer(ODOMETRY_HISTORY_SEC);
+
+    private Pose2d                                  lastPose               = null;
+    private double                                  lastPoseTime           = 0;
+
+    // approximate variance of the pose estimate
+    private double                                  xyVariance             = UNKNOWN_VARIANCE;
+    private double                                  headingVariance        = UNKNOWN_VARIANCE;
+
+    private double                                  lastMahalanobisSquared = 0;
+
+    // residuals (vision pose minus estimate) of the rejected frames in a row, oldest overwritten
+    private final double[]                          rejectedDx             = new double[RECOVERY_FRAMES];
+    private final double[]                          rejectedDy             = new double[RECOVERY_FRAMES];
+    private final double[]                          rejectedDTheta         = new double[RECOVERY_FRAMES];
+    private int                                     rejectedInARow         = 0;
+    private long                                    recoveryCount          = 0;
+
+    /**
+     * Record the estimated pose. Call once per loop after the odometry update.
+     *
+     * @param timestampSeconds the FPGA time of the pose
+     * @param pose the estimated pose
+     */
+    public void addPose(double timestampSeconds, Pose2d pose) {
+        if (lastPose != null) {
+            double distance = pose.getTranslation().getDistance(lastPose.getTranslation());
+            if (distance > ODOMETRY_RESET_METRES) {
+                reset();
+            }
+            else {
+                double turnDeg = Math.abs(pose.getRotation().minus(lastPose.getRotation()).getDegrees());
+                double dt      = Math.max(0, timestampSeconds - lastPoseTime);
+                xyVariance      += square(ODOMETRY_DRIFT_STD_PER_METRE * distance)
+                    + square(ODOMETRY_RANDOM_WALK_STD) * dt;
+                headingVariance += square(Units.degreesToRadians(ODOMETRY_DRIFT_DEG_PER_DEG * turnDeg))
+                    + square(Units.degreesToRadians(ODOMETRY_RANDOM_WALK_DEG)) * dt;
+                xyVariance       = Math.min(xyVariance, UNKNOWN_VARIANCE);
+                headingVariance  = Math.min(headingVariance, UNKNOWN_VARIANCE);
+            }
+        }
+        lastPose     = pose;
+        lastPoseTime = timestampSeconds;
+        history.addSample(timestampSeconds, pose);
+    }
+
+    /**
+     * Evaluate a vision pose against the estimated pose at its capture time. A rejected pose that
+     * agrees with the ones rejected before it re-seeds the estimate variance and is accepted.
+     *
+     * @param info the vision pose
+     * @return the measurement standard deviations to fuse the pose with, or null if the pose is
+     * rejected
+     */
+    public Matrix<N3, N1> evaluate(VisionPositionInfo info) {
+        Matrix<N3, N1>   stds       = getVisionStandardDeviation(info.tagCount(), info.avgTagDistanceMetres())
+            .times(info.camera().stdDevScale);
+
+        Optional<Pose2d> estimated  = history.getSample(info.timestampSeconds());
+        if (estimated.isEmpty()) {
+            // no history yet (or the frame is older than the history), nothing to compare with
+            lastMahalanobisSquared = 0;
+            return stds;
+        }
+
+        Pose2d           pose       = info.pose();
+        Pose2d           then       = estimated.get();
+        double           dx         = pose.getX() - then.getX();
+        double           dy         = pose.getY() - then.getY();
+        double           dTheta     = pose.getRotation().minus(then.getRotation()).getRadians();
+
+        double           xyS        = xyVariance + square(stds.get(0, 0));
+        double           headingS   = headingVariance + square(stds.get(2, 0));
+
+        lastMahalanobisSquared = (dx * dx + dy * dy) / xyS + dTheta * dTheta / headingS;
+
+        if (lastMahalanobisSquared <= VISION_GATE_CHI_SQUARED) {
+            rejectedInARow = 0;
+            return stds;
+        }
+
+        int i = rejectedInARow % RECOVERY_FRAMES;
+        rejectedDx[i]     = dx;
+        rejectedDy[i]     = dy;
+        rejectedDTheta[i] = dTheta;
+        rejectedInARow++;
+        if (rejectedInARow >= RECOVERY_FRAMES && rejectedFramesAgree()) {
+            // the frames agree, the estimate is what is wrong
+            xyVariance      = UNKNOWN_VARIANCE;
+            headingVariance = UNKNOWN_VARIANCE;
+            rejectedInARow  = 0;
+            recoveryCount++;
+            return stds;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the residuals of the last {@link #RECOVERY_FRAMES} rejected frames agree
+     */
+    private boolean rejectedFramesAgree() {
+        double meanDx     = 0;
+        double meanDy     = 0;
+        double meanDTheta = 0;
+        for (int i = 0; i < RECOVERY_FRAMES; i++) {
+            meanDx     += rejectedDx[i] / RECOVERY_FRAMES;
+            meanDy     += rejectedDy[i] / RECOVERY_FRAMES;
+            meanDTheta += rejectedDTheta[i] / RECOVERY_FRAMES;
+        }
+        for (int i = 0; i < RECOVERY_FRAMES; i++) {
+            if (Math.hypot(rejectedDx[i] - meanDx, rejectedDy[i] - meanDy) > RECOVERY_METRES
+                || Math.abs(rejectedDTheta[i] - meanDTheta) > RECOVERY_RAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the estimated pose at a past time
+     *
+     * @param timestampSeconds the FPGA time
+     * @return the pose, interpolated from the history, or empty if there is no history
+     */
+    public Optional<Pose2d> getPose(double timestampSeconds) {
+        return history.getSample(timestampSeconds);
+    }
+
+    /**
+     * Record that a measurement was fused, reducing the variance of the estimate as the estimator
+     * would.
+     *
+     * @param stds the standard deviations the measurement was fused with
+     */
+    public void accepted(Matrix<N3, N1> stds) {
+        double xyR      = square(stds.get(0, 0));
+        double headingR = square(stds.get(2, 0));
+        xyVariance      = xyVariance * xyR / (xyVariance + xyR);
+        headingVariance = headingVariance * headingR / (headingVariance + headingR);
+    }
+
+    /**
+     * Forget the history and the estimate variance, e.g. when the odometry is reset.
+     */
+    public void reset() {
+        history.clear();
+        xyVariance      = UNKNOWN_VARIANCE;
+        headingVariance = UNKNOWN_VARIANCE;
+        rejectedInARow  = 0;
+    }
+
+    public void updateTelemetry() {
+        SmartDashboard.putNumber("Drive/Swerve/vision/mahalanobis2", lastMahalanobisSquared);
+        SmartDashboard.putNumber("Drive/Swerve/vision/xyStd", Math.sqrt(xyVariance));
+        SmartDashboard.putNumber("Drive/Swerve/vision/headingStdDeg", Math.toDegrees(Math.sqrt(headingVariance)));
+        SmartDashboard.putNumber("Drive/Swerve/vision/rejectedInARow", rejectedInARow);
+        SmartDashboard.putNumber("Drive/Swerve/vision/gateRecoveries", recoveryCount);
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
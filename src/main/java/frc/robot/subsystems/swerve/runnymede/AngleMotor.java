@@ -24,7 +24,7 @@ public class AngleMotor extends SparkMaxNeoMotor {
      * @{link https://docs.revrobotics.com/sparkmax/operating-modes/closed-loop-control}
      */
     AngleMotor(int canBusId, Constants.Swerve.Motor cfg) {
-        super(canBusId);
+        super(canBusId, StatusFramePolicy.Role.ANGLE);
         // instantiate & configure motor
         this.motor.setInverted(cfg.inverted);
         configureSparkMax(() -> motor.enableVoltageCompensation(cfg.nominalVoltage));
@@ -50,6 +50,7 @@ public class AngleMotor extends SparkMaxNeoMotor {
         configureSparkMax(() -> pid.setPositionPIDWrappingMinInput(0));
         configureSparkMax(() -> pid.setPositionPIDWrappingMaxInput(90));
 
+        configureSetpoints(cfg.setpointDeadband, cfg.setpointKeepAliveSec);
         setMotorBrake(false);
 
         burnFlash();
@@ -73,7 +74,7 @@ public class AngleMotor extends SparkMaxNeoMotor {
 
     void setReferenceDegrees(double setpoint, double feedforward) {
         this.setpointDegrees = setpoint;
-        configureSparkMax(() -> pid.setReference(setpoint, CANSparkBase.ControlType.kPosition, 0, feedforward));
+        setReference(setpoint, CANSparkBase.ControlType.kPosition, feedforward);
     }
 
     void updateTelemetry() {
@@ -1,5 +1,6 @@
 package frc.robot.subsystems.swerve.runnymede;
 
+import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
@@ -11,24 +12,46 @@ import com.ctre.phoenix6.signals.MagnetHealthValue;
 import com.ctre.phoenix6.signals.SensorDirectionValue;
 
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * Inspired by YAGSL SwerveAbsoluteEncoder and CANCoderSwerve. Designed to be used only
  * internally inside the SwerveModule object.
+ * <p>
+ * The encoder signals are not read one at a time. They are registered with a
+ * {@link CanCoderGroup}, which refreshes the signals of every module together once per loop, and
+ * the getters return the refreshed values.
  */
 class CanCoder {
 
-    /**
-     * The maximum amount of times the swerve encoder will attempt to configure itself if failures
-     * occur.
-     */
-    private final int      maximumRetries = 5;
-
-    private final CANcoder encoder;
-    private final double   absoluteEncoderOffset;
-
-    boolean                readingError   = false;
+    /** How often the encoder sends its position and velocity */
+    private static final double                   SIGNAL_FREQUENCY_HZ = 100;
+    /** The magnet health only changes if the encoder is knocked loose */
+    private static final double                   HEALTH_FREQUENCY_HZ = 4;
+    /** How long to wait for the first values at startup */
+    private static final double                   STARTUP_WAIT_SEC    = 0.1;
+    /** A position older than this is stale, e.g. the encoder has dropped off the bus */
+    private static final double                   MAX_AGE_SEC         = 0.1;
+
+    private final CANcoder                        encoder;
+    private final double                          absoluteEncoderOffset;
+
+    private final StatusSignal<Double>            absolutePosition;
+    private final StatusSignal<Double>            velocity;
+    private final StatusSignal<MagnetHealthValue> magnetHealth;
+
+    boolean                                       readingError        = false;
+
+    private double                                lastGoodDegrees     = 0;
+    private double                                lastGoodTime        = Double.NEGATIVE_INFINITY;
+    /** The number of positions read correctly, each sample counted once however often it is read */
+    private long                                  goodReadingCount    = 0;
+    private double                                lastGoodSampleTime  = Double.NaN;
+    // the last conditions reported, so that each change is reported once
+    private StatusCode                            reportedStatus      = StatusCode.OK;
+    private boolean                               reportedStale       = false;
+    private MagnetHealthValue                     reportedHealth      = MagnetHealthValue.Magnet_Green;
 
     CanCoder(int canId, double absoluteEncoderOffset, boolean inverted) {
         encoder = new CANcoder(canId);
@@ -46,6 +69,23 @@ class CanCoder {
         // note, we aren't bothering to push this offset up into the encoder, we will just manage it
         // here in this class
         this.absoluteEncoderOffset = absoluteEncoderOffset;
+
+        // only send the signals that are used
+        absolutePosition           = encoder.getAbsolutePosition();
+        velocity                   = encoder.getVelocity();
+        magnetHealth               = encoder.getMagnetHealth();
+        BaseStatusSignal.setUpdateFrequencyForAll(SIGNAL_FREQUENCY_HZ, absolutePosition, velocity);
+        magnetHealth.setUpdateFrequency(HEALTH_FREQUENCY_HZ);
+        encoder.optimizeBusUtilization();
+
+        BaseStatusSignal.waitForAll(STARTUP_WAIT_SEC, absolutePosition, velocity, magnetHealth);
+    }
+
+    /**
+     * @return the signals to refresh each loop
+     */
+    BaseStatusSignal[] getSignals() {
+        return new BaseStatusSignal[] { absolutePosition, velocity, magnetHealth };
     }
 
     int getDeviceId() {
@@ -53,56 +93,102 @@ class CanCoder {
     }
 
     /**
-     * Get the absolute position of the encoder.
+     * Get the absolute position of the encoder from the last refresh of its group, compensated for
+     * the time since the encoder sent it using its velocity. Never blocks.
      * <p>
-     * Sets readingError = true if there is a problem using the encoder.
+     * Sets readingError = true if there is a problem using the encoder: a bad status, a stale value
+     * or a bad magnet. The last good position is returned instead, see {@link #getAgeSeconds()}.
+     * Each problem is reported when it starts and when it clears, not on every read.
      *
      * @return Absolute position in degrees from [0, 360).
      */
     double getAbsolutePositionInDegrees() {
-        readingError = isNotHealthy();
+        StatusCode status = absolutePosition.getStatus();
+        boolean    stale  = status.isOK() && absolutePosition.getTimestamp().getLatency() > MAX_AGE_SEC;
+        boolean    usable = isHealthy(magnetHealth.getValue());
+        reportStatus(status, stale);
+
+        readingError = !status.isOK() || stale || !usable;
         if (readingError) {
-            return 0;
+            return lastGoodDegrees;
         }
 
-        StatusSignal<Double> angle = encoder.getAbsolutePosition().refresh();
+        double degrees = BaseStatusSignal.getLatencyCompensatedValue(absolutePosition, velocity) * 360
+            - absoluteEncoderOffset;
+        lastGoodDegrees = (degrees % 360 + 360) % 360;
+        lastGoodTime    = Timer.getFPGATimestamp();
 
-        int                  retryCount;
-        for (retryCount = 0; retryCount < maximumRetries; retryCount++) {
-            if (angle.getStatus() == StatusCode.OK) {
-                break;
-            }
-            angle = angle.waitForUpdate(0.005);
+        double sampleTime = absolutePosition.getTimestamp().getTime();
+        if (sampleTime != lastGoodSampleTime) {
+            lastGoodSampleTime = sampleTime;
+            goodReadingCount++;
         }
-        if (angle.getStatus() != StatusCode.OK) {
-            readingError = true;
-            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " reading was faulty after retrying "
-                + maximumRetries + " times. " + angle.getStatus().getDescription(), false);
-            return 0;
+        return lastGoodDegrees;
+    }
+
+    /**
+     * @return the number of distinct samples read correctly. A sample read again before the encoder
+     * sends the next one is not counted again.
+     */
+    long getGoodReadingCount() {
+        return goodReadingCount;
+    }
+
+    /**
+     * @return the time since the position was last read correctly, infinite if it never was
+     */
+    double getAgeSeconds() {
+        return Timer.getFPGATimestamp() - lastGoodTime;
+    }
+
+    /**
+     * @return the speed the module is turning, from the last refresh of its group
+     */
+    double getVelocityInDegreesPerSecond() {
+        return velocity.getValue() * 360;
+    }
+
+    private void reportStatus(StatusCode status, boolean stale) {
+        if (status != reportedStatus) {
+            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " reading "
+                + (status.isOK() ? "recovered." : "was faulty. " + status.getDescription()), false);
+            reportedStatus = status;
         }
-        if (retryCount > 0) {
-            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " read successfully but required " + retryCount
-                + " retries to get valid data.", false);
+        if (stale != reportedStale) {
+            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " reading "
+                + (stale ? "is stale." : "is current again."), false);
+            reportedStale = stale;
         }
-
-        return (angle.getValue() * 360 - absoluteEncoderOffset + 360) % 360;
     }
 
-    private boolean isNotHealthy() {
-        MagnetHealthValue strength = encoder.getMagnetHealth().getValue();
+    /**
+     * @return true if the magnet is good enough to use the encoder
+     */
+    private boolean isHealthy(MagnetHealthValue strength) {
+        boolean changed = strength != reportedHealth;
+        reportedHealth = strength;
         switch (strength) {
         case Magnet_Green:
+            if (changed) {
+                DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " magnet health GREEN.", false);
+            }
+            return true;
+        case Magnet_Orange:
+            if (changed) {
+                DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " magnetic field is less than ideal.", false);
+            }
+            return true;
+        case Magnet_Invalid:
+            if (changed) {
+                DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " not usable - magnet INVALID.", false);
+            }
             return false;
-        case Magnet_Orange: {
-            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " magnetic field is less than ideal.", false);
+        default:
+            if (changed) {
+                DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " not usable - magnet health RED.", false);
+            }
             return false;
         }
-        case Magnet_Invalid:
-            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " not usable - magnet INVALID.", false);
-        case Magnet_Red:
-            DriverStation.reportWarning("CANCoder " + encoder.getDeviceID() + " not usable - magnet health RED.", false);
-        }
-        return true;
     }
 
     void updateTelemetry() {
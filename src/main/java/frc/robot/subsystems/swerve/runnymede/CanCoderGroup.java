@@ -0,0 +1,56 @@
+package frc.robot.subsystems.swerve.runnymede;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * The absolute encoders of all of the swerve modules, read together.
+ * <p>
+ * The position, velocity and magnet health signals of every encoder are registered once, and
+ * refreshed with a single {@link BaseStatusSignal#refreshAll} call at the start of each loop, so
+ * that every module works from values taken at the same moment. The refresh does not wait for new
+ * data. The encoders send at a fixed rate and the latest values are used.
+ */
+class CanCoderGroup {
+
+    private final BaseStatusSignal[] signals;
+    private StatusCode               lastStatus   = StatusCode.OK;
+    private long                     failureCount = 0;
+
+    /**
+     * @param encoders the encoders of the modules
+     */
+    CanCoderGroup(CanCoder... encoders) {
+        int count = 0;
+        for (CanCoder encoder : encoders) {
+            count += encoder.getSignals().length;
+        }
+        signals = new BaseStatusSignal[count];
+        int i = 0;
+        for (CanCoder encoder : encoders) {
+            for (BaseStatusSignal signal : encoder.getSignals()) {
+                signals[i++] = signal;
+            }
+        }
+    }
+
+    /**
+     * Refresh the signals of every encoder. Call once per loop, before the modules are read.
+     *
+     * @return the status of the refresh, OK if every signal was refreshed
+     */
+    StatusCode refresh() {
+        lastStatus = BaseStatusSignal.refreshAll(signals);
+        if (!lastStatus.isOK()) {
+            failureCount++;
+        }
+        return lastStatus;
+    }
+
+    void updateTelemetry() {
+        SmartDashboard.putString("swerve/1310/encoders/status", lastStatus.getName());
+        SmartDashboard.putNumber("swerve/1310/encoders/failures", failureCount);
+    }
+}
@@ -22,7 +22,7 @@ public class DriveMotor extends SparkMaxNeoMotor {
      * @{link https://docs.revrobotics.com/sparkmax/operating-modes/closed-loop-control}
      */
     DriveMotor(int canBusId, Constants.Swerve.Motor cfg, double wheelRadiusMetres) {
-        super(canBusId);
+        super(canBusId, StatusFramePolicy.Role.DRIVE);
 
         // instantiate & configure motor
         this.motor.setInverted(cfg.inverted);
@@ -45,6 +45,7 @@ public class DriveMotor extends SparkMaxNeoMotor {
         configureSparkMax(() -> pid.setIZone(cfg.iz, 0));
         configureSparkMax(() -> pid.setOutputRange(-1, 1, 0));
         configureSparkMax(() -> pid.setPositionPIDWrappingEnabled(false));
+        configureSetpoints(cfg.setpointDeadband, cfg.setpointKeepAliveSec);
         setMotorBrake(true);
 
         burnFlash();
@@ -56,7 +57,7 @@ public class DriveMotor extends SparkMaxNeoMotor {
 
     void setReferenceMetresPerSecond(double setpointMPS, double feedforward) {
         this.setpointMPS = setpointMPS;
-        configureSparkMax(() -> pid.setReference(this.setpointMPS, CANSparkBase.ControlType.kVelocity, 0, feedforward));
+        setReference(setpointMPS, CANSparkBase.ControlType.kVelocity, feedforward);
     }
 
     double getVelocityMetresPerSecond() {
@@ -36,13 +36,14 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants;
 import frc.robot.Robot;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
-import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightCameraRegistry;
 
 /**
  * Represents a swerve drive style drivetrain.
  */
 public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
     private final SwerveModule[]          modules;
+    private final CanCoderGroup           encoders;
     private final SwerveDriveKinematics   kinematics;
     private final AHRS                    gyro;
     private final SimulatedIMU            simulatedIMU;
@@ -51,14 +52,16 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
 
     public final SwerveDrivePoseEstimator swerveDrivePoseEstimator;
 
-    public RunnymedeSwerveSubsystem(HughVisionSubsystem visionSubsystem) {
-        super(visionSubsystem);
+    public RunnymedeSwerveSubsystem(LimelightCameraRegistry visionCameras) {
+        super(visionCameras);
 
         modules      = new SwerveModule[4];
         modules[0]   = new SwerveModule(FRONT_LEFT, DRIVE, ANGLE);
         modules[1]   = new SwerveModule(FRONT_RIGHT, DRIVE, ANGLE);
         modules[2]   = new SwerveModule(BACK_LEFT, DRIVE, ANGLE);
         modules[3]   = new SwerveModule(BACK_RIGHT, DRIVE, ANGLE);
+        encoders     = new CanCoderGroup(
+            Arrays.stream(modules).map(SwerveModule::getEncoder).toArray(CanCoder[]::new));
 
         kinematics   = new SwerveDriveKinematics(
             Arrays.stream(modules).map(SwerveModule::getLocation).toArray(Translation2d[]::new));
@@ -87,9 +90,29 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
 
         this.swerveDrivePoseEstimator = new SwerveDrivePoseEstimator(
             this.kinematics,
-            gyro.getRotation3d().minus(gyroOffset).toRotation2d(),
-            Arrays.stream(modules).map(SwerveModule::getPosition).toArray(SwerveModulePosition[]::new),
+            getGyroHeading(), getModulePositions(),
             new Pose2d(new Translation2d(0.0, 0.0), Rotation2d.fromDegrees(0.0)));
+
+        for (StatusFramePolicy.Mode mode : StatusFramePolicy.Mode.values()) {
+            SmartDashboard.putNumber("swerve/1310/statusFrames/busLoadPercent/" + mode,
+                StatusFramePolicy.estimateBusLoadPercent(mode, modules.length));
+        }
+        updateRobotMode();
+    }
+
+    /**
+     * Set the status frames of the module motors for the robot mode, so that the frames odometry
+     * needs are fast while driving and everything is slow while disabled.
+     */
+    @Override
+    public void updateRobotMode() {
+        StatusFramePolicy.Mode mode = StatusFramePolicy.Mode.current();
+        for (SwerveModule module : modules) {
+            module.applyStatusFrames(mode);
+        }
+        SmartDashboard.putString("swerve/1310/statusFrames/mode", mode.name());
+        SmartDashboard.putNumber("swerve/1310/statusFrames/busLoadPercent",
+            StatusFramePolicy.estimateBusLoadPercent(mode, modules.length));
     }
 
     @Override
@@ -127,6 +150,7 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
             module.updateTelemetry();
         }
 
+        encoders.updateTelemetry();
         Telemetry.updateData();
     }
 
@@ -156,9 +180,10 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
 
     @Override
     public void updateOdometryWithStates() {
-        swerveDrivePoseEstimator.update(
-            gyro.getRotation3d().minus(gyroOffset).toRotation2d(),
-            Arrays.stream(modules).map(SwerveModule::getPosition).toArray(SwerveModulePosition[]::new));
+        // read every module encoder at once, before anything uses them this loop
+        encoders.refresh();
+
+        swerveDrivePoseEstimator.update(getGyroHeading(), getModulePositions());
 
         Pose2d robotPose = swerveDrivePoseEstimator.getEstimatedPosition();
 
@@ -178,6 +203,16 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
         return swerveDrivePoseEstimator.getEstimatedPosition();
     }
 
+    @Override
+    protected SwerveModulePosition[] getModulePositions() {
+        return Arrays.stream(modules).map(SwerveModule::getPosition).toArray(SwerveModulePosition[]::new);
+    }
+
+    @Override
+    protected Rotation2d getGyroHeading() {
+        return gyro.getRotation3d().minus(gyroOffset).toRotation2d();
+    }
+
     private Pose2d[] getModulePoses(Pose2d robotPose) {
         return Arrays.stream(modules).map(m -> {
             Transform2d tx = new Transform2d(m.getLocation(), m.getState().angle);
@@ -213,8 +248,7 @@ public class RunnymedeSwerveSubsystem extends SwerveSubsystem {
 
     @Override
     public void resetOdometry(Pose2d pose) {
-        this.swerveDrivePoseEstimator.resetPosition(gyro.getRotation3d().minus(gyroOffset).toRotation2d(),
-            Arrays.stream(modules).map(SwerveModule::getPosition).toArray(SwerveModulePosition[]::new), pose);
+        this.swerveDrivePoseEstimator.resetPosition(getGyroHeading(), getModulePositions(), pose);
     }
 
     @Override
@@ -6,6 +6,7 @@ import java.util.function.Supplier;
 import com.revrobotics.*;
 
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 abstract class SparkMaxNeoMotor {
@@ -14,17 +15,38 @@ abstract class SparkMaxNeoMotor {
      * The maximum amount of times the swerve motor will attempt to configure a motor if failures
      * occur.
      */
-    private final int                  maximumRetries = 5;
-    protected final CANSparkMax        motor;
-    protected final RelativeEncoder    encoder;
-    protected final SparkPIDController pid;
+    private final int                    maximumRetries             = 5;
+    /** Feedforwards closer than this to the last one sent are the same, in volts */
+    private static final double          FEEDFORWARD_DEADBAND_VOLTS = 0.01;
+    protected final CANSparkMax          motor;
+    protected final RelativeEncoder      encoder;
+    protected final SparkPIDController   pid;
+    private final StatusFramePolicy.Role role;
 
-    SparkMaxNeoMotor(int canBusId) {
+    /** The mode the status frames were last set for, null if they never were */
+    private StatusFramePolicy.Mode       statusFrameMode            = null;
+
+    // see configureSetpoints
+    private double                       setpointDeadband           = 0;
+    private double                       keepAliveSec               = 0;
+
+    // the last setpoint the motor acknowledged, sentType is null if there is none
+    private CANSparkBase.ControlType     sentType                   = null;
+    private double                       sentSetpoint               = 0;
+    private double                       sentFeedforward            = 0;
+    private double                       sentTime                   = 0;
+
+    private long                         setpointsSent              = 0;
+    private long                         setpointsSuppressed        = 0;
+    private long                         setpointFailures           = 0;
+
+    SparkMaxNeoMotor(int canBusId, StatusFramePolicy.Role role) {
         // instantiate & configure motor
         this.motor   = new CANSparkMax(canBusId, CANSparkLowLevel.MotorType.kBrushless);
         this.encoder = this.motor.getEncoder();
         pid          = motor.getPIDController();
-        configureCANStatusFrames(10, 20, 20, 500, 500);
+        this.role    = role;
+        applyStatusFrames(StatusFramePolicy.Mode.DISABLED);
         configureSparkMax(motor::restoreFactoryDefaults);
         configureSparkMax(motor::clearFaults);
     }
@@ -43,6 +65,58 @@ abstract class SparkMaxNeoMotor {
         DriverStation.reportWarning("Failure configuring motor " + motor.getDeviceId(), true);
     }
 
+    /**
+     * Configure which setpoints {@link #setReference} sends.
+     *
+     * @param deadband setpoints closer than this to the last one sent are the same
+     * @param keepAliveSec an unchanged setpoint is sent again after this long, so that a lost frame
+     * does not leave the motor on an old setpoint
+     */
+    protected final void configureSetpoints(double deadband, double keepAliveSec) {
+        this.setpointDeadband = deadband;
+        this.keepAliveSec     = keepAliveSec;
+    }
+
+    /**
+     * Send a closed loop setpoint to the motor, unless it is the same as the last one the motor
+     * acknowledged. A setpoint is the same if the control type matches and the setpoint and
+     * feedforward are within their deadbands, and it is sent anyway once the keep-alive period has
+     * passed. Holding a heading or a locked wheel then costs no CAN traffic.
+     * <p>
+     * A setpoint is sent once, not retried as configuration is, because the next loop sends a fresh
+     * one. A failure forgets the last setpoint so that the next loop is not suppressed.
+     *
+     * @param setpoint the setpoint in the units of the control type
+     * @param type the control type
+     * @param feedforward the arbitrary feedforward in volts
+     */
+    protected final void setReference(double setpoint, CANSparkBase.ControlType type, double feedforward) {
+        double now = Timer.getFPGATimestamp();
+        if (type == sentType
+            && Math.abs(setpoint - sentSetpoint) <= setpointDeadband
+            && Math.abs(feedforward - sentFeedforward) <= FEEDFORWARD_DEADBAND_VOLTS
+            && now - sentTime < keepAliveSec) {
+            setpointsSuppressed++;
+            return;
+        }
+
+        setpointsSent++;
+        if (pid.setReference(setpoint, type, 0, feedforward) == REVLibError.kOk) {
+            sentType        = type;
+            sentSetpoint    = setpoint;
+            sentFeedforward = feedforward;
+            sentTime        = now;
+        }
+        else {
+            // only report the first failure of a run
+            if (sentType != null || setpointFailures == 0) {
+                DriverStation.reportWarning("Failure setting reference on motor " + motor.getDeviceId(), false);
+            }
+            sentType = null;
+            setpointFailures++;
+        }
+    }
+
     protected final void setMotorBrake(boolean isBrakeMode) {
         configureSparkMax(() -> motor.setIdleMode(isBrakeMode ? CANSparkBase.IdleMode.kBrake : CANSparkBase.IdleMode.kCoast));
     }
@@ -57,22 +131,23 @@ abstract class SparkMaxNeoMotor {
     }
 
     /**
-     * Set the CAN status frames.
+     * Set the CAN status frame periods for the role of this motor and the robot mode, unless they
+     * are already set for the mode.
      *
-     * @param CANStatus0 Applied Output, Faults, Sticky Faults, Is Follower
-     * @param CANStatus1 Motor Velocity, Motor Temperature, Motor Voltage, Motor Current
-     * @param CANStatus2 Motor Position
-     * @param CANStatus3 Analog Sensor Voltage, Analog Sensor Velocity, Analog Sensor Position
-     * @param CANStatus4 Alternate Encoder Velocity, Alternate Encoder Position
+     * @param mode the robot mode
+     * @see StatusFramePolicy
      */
-    private void configureCANStatusFrames(int CANStatus0, int CANStatus1, int CANStatus2, int CANStatus3, int CANStatus4) {
-        configureSparkMax(() -> motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus0, CANStatus0));
-        configureSparkMax(() -> motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus1, CANStatus1));
-        configureSparkMax(() -> motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus2, CANStatus2));
-        configureSparkMax(() -> motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus3, CANStatus3));
-        configureSparkMax(() -> motor.setPeriodicFramePeriod(CANSparkLowLevel.PeriodicFrame.kStatus4, CANStatus4));
-        // TODO: Configure Status Frame 5 and 6 if necessary
-        // https://docs.revrobotics.com/sparkmax/operating-modes/control-interfaces
+    final void applyStatusFrames(StatusFramePolicy.Mode mode) {
+        if (mode == statusFrameMode) {
+            return;
+        }
+        int[] periodsMs = StatusFramePolicy.getPeriodsMs(role, mode);
+        for (int i = 0; i < periodsMs.length; i++) {
+            CANSparkLowLevel.PeriodicFrame frame    = StatusFramePolicy.FRAMES[i];
+            int                            periodMs = periodsMs[i];
+            configureSparkMax(() -> motor.setPeriodicFramePeriod(frame, periodMs));
+        }
+        statusFrameMode = mode;
     }
 
     void updateTelemetry(String pfx) {
@@ -83,5 +158,8 @@ abstract class SparkMaxNeoMotor {
         SmartDashboard.putNumber(pfx + "temp", motor.getMotorTemperature());
         SmartDashboard.putNumber(pfx + "faults", motor.getFaults());
         SmartDashboard.putNumber(pfx + "voltageComp", motor.getVoltageCompensationNominalVoltage());
+        SmartDashboard.putNumber(pfx + "setpointsSent", setpointsSent);
+        SmartDashboard.putNumber(pfx + "setpointsSuppressed", setpointsSuppressed);
+        SmartDashboard.putNumber(pfx + "setpointFailures", setpointFailures);
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package frc.robot.subsystems.swerve.runnymede;
+
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * The periods of the SparkMax status frames, by what the motor does and what the robot is doing.
+ * <p>
+ * Only the frames that are read at loop rate are sent fast. The drive motors need their position
+ * (frame 2) and velocity (frame 1) for odometry, and the angle motors their position to steer. The
+ * current, temperature and voltage in frame 1 of an angle motor are only telemetry, except in test
+ * mode where the modules are being checked. While disabled nothing is controlled, so everything is
+ * slow, and the analog, alternate encoder and duty cycle frames (3 to 6) are never used.
+ * <p>
+ * See <a href="https://docs.revrobotics.com/sparkmax/operating-modes/control-interfaces">the
+ * SparkMax control interfaces</a> for the contents of each frame.
+ */
+final class StatusFramePolicy {
+
+    enum Role {
+        DRIVE, ANGLE
+    }
+
+    enum Mode {
+        DISABLED, AUTO, TELEOP, TEST;
+
+        /**
+         * @return the mode the robot is in now
+         */
+        static Mode current() {
+            if (DriverStation.isDisabled()) {
+                return DISABLED;
+            }
+            if (DriverStation.isAutonomous()) {
+                return AUTO;
+            }
+            if (DriverStation.isTest()) {
+                return TEST;
+            }
+            return TELEOP;
+        }
+    }
+
+    /**
+     * The frames, in the order of the periods.
+     * <ol start="0">
+     * <li>Applied Output, Faults, Sticky Faults, Is Follower
+     * <li>Motor Velocity, Motor Temperature, Motor Voltage, Motor Current
+     * <li>Motor Position
+     * <li>Analog Sensor Voltage, Analog Sensor Velocity, Analog Sensor Position
+     * <li>Alternate Encoder Velocity, Alternate Encoder Position
+     * <li>Duty Cycle Absolute Encoder Position, Duty Cycle Absolute Encoder Angle
+     * <li>Duty Cycle Absolute Encoder Velocity, Duty Cycle Absolute Encoder Frequency
+     * </ol>
+     */
+    static final PeriodicFrame[] FRAMES         = { PeriodicFrame.kStatus0, PeriodicFrame.kStatus1,
+        PeriodicFrame.kStatus2, PeriodicFrame.kStatus3, PeriodicFrame.kStatus4, PeriodicFrame.kStatus5,
+        PeriodicFrame.kStatus6 };
+
+    /** The longest period the SparkMax accepts, for frames that are not used */
+    private static final int     UNUSED         = 65535;
+
+    // periods in ms of frames 0 to 6, by mode
+    private static final int[][] DRIVE_PERIODS  = {
+        { 100, 100, 100, UNUSED, UNUSED, UNUSED, UNUSED }, // DISABLED
+        { 20, 20, 20, UNUSED, UNUSED, UNUSED, UNUSED },    // AUTO
+        { 20, 20, 20, UNUSED, UNUSED, UNUSED, UNUSED },    // TELEOP
+        { 20, 20, 20, UNUSED, UNUSED, UNUSED, UNUSED } };  // TEST
+
+    private static final int[][] ANGLE_PERIODS  = {
+        { 100, 200, 100, UNUSED, UNUSED, UNUSED, UNUSED }, // DISABLED
+        { 20, 200, 20, UNUSED, UNUSED, UNUSED, UNUSED },   // AUTO
+        { 20, 200, 20, UNUSED, UNUSED, UNUSED, UNUSED },   // TELEOP
+        { 20, 20, 20, UNUSED, UNUSED, UNUSED, UNUSED } };  // TEST
+
+    /**
+     * A SparkMax status frame is an extended CAN frame with 8 data bytes: 128 bits, plus the
+     * interframe space and an allowance for bit stuffing.
+     */
+    private static final double  BITS_PER_FRAME = 160;
+    private static final double  BUS_BITS_PER_S = 1_000_000;
+
+    private StatusFramePolicy() {
+    }
+
+    /**
+     * @param role what the motor does
+     * @param mode what the robot is doing
+     * @return the periods in ms of status frames 0 to 6, in the order of {@link #FRAMES}
+     */
+    static int[] getPeriodsMs(Role role, Mode mode) {
+        return (role == Role.DRIVE ? DRIVE_PERIODS : ANGLE_PERIODS)[mode.ordinal()];
+    }
+
+    /**
+     * Estimate the share of the CAN bus used by the status frames of the swerve motors. Unused
+     * frames, the setpoints sent to the motors and the other devices on the bus are not counted.
+     *
+     * @param mode what the robot is doing
+     * @param moduleCount the number of swerve modules, each with a drive and an angle motor
+     * @return the estimated bus load in percent
+     */
+    static double estimateBusLoadPercent(Mode mode, int moduleCount) {
+        double framesPerSec = moduleCount * (framesPerSec(getPeriodsMs(Role.DRIVE, mode))
+            + framesPerSec(getPeriodsMs(Role.ANGLE, mode)));
+        return framesPerSec * BITS_PER_FRAME / BUS_BITS_PER_S * 100;
+    }
+
+    private static double framesPerSec(int[] periodsMs) {
+        double framesPerSec = 0;
+        for (int periodMs : periodsMs) {
+            if (periodMs != UNUSED) {
+                framesPerSec += 1000.0 / periodMs;
+            }
+        }
+        return framesPerSec;
+    }
+}
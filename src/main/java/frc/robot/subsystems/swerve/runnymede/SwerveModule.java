@@ -1,16 +1,27 @@
 package frc.robot.subsystems.swerve.runnymede;
 
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants;
 
 public class SwerveModule {
 
+    /** Reseed the steer encoder when it has drifted from the absolute encoder by more than this */
+    private static final double         RESEED_THRESHOLD_DEG         = 1.0;
+    /** Only reseed when the module is turning slower than this, so that the two readings agree */
+    private static final double         RESEED_MAX_STEER_DEG_PER_SEC = 10;
+    private static final double         RESEED_MIN_INTERVAL_SEC      = 0.5;
+    /** A degraded module trusts its absolute encoder again after this many new good samples in a row */
+    private static final int            RECOVERY_READINGS            = 25;
+
     private final String                name;
     private final Translation2d         location;
     private final DriveMotor            driveMotor;
@@ -18,6 +29,16 @@ public class SwerveModule {
     private final CanCoder              encoder;
     private final SimulatedSwerveModule sim;
 
+    private double                      lastReseedTime               = Double.NEGATIVE_INFINITY;
+    private long                        reseedCount                  = 0;
+    private double                      driftDeg                     = 0;
+
+    /** Whether the steer encoder has ever been seeded from the absolute encoder */
+    private boolean                     seeded                       = false;
+    private boolean                     degraded                     = false;
+    /** The good reading count of the encoder at its last reading error */
+    private long                        goodReadingsAtError          = 0;
+
     /**
      * Constructs a SwerveModule with a drive motor, turning motor, drive encoder and turning
      * encoder.
@@ -31,7 +52,7 @@ public class SwerveModule {
 
         sim           = new SimulatedSwerveModule();
 
-        updateInternalEncoder();
+        resyncInternalEncoder();
     }
 
     public String getName() {
@@ -42,6 +63,13 @@ public class SwerveModule {
         return location;
     }
 
+    /**
+     * @return the absolute encoder, whose signals are refreshed by the drive subsystem
+     */
+    CanCoder getEncoder() {
+        return encoder;
+    }
+
     public SwerveModulePosition getPosition() {
         if (RobotBase.isSimulation()) {
             return sim.getPosition();
@@ -62,10 +90,22 @@ public class SwerveModule {
         }
     }
 
+    /**
+     * Drive and steer the module. Until the steer encoder has been seeded from the absolute encoder
+     * the module does not know which way it points, so it does not drive and holds its steer.
+     *
+     * @param desiredState the speed and direction of the module
+     */
     public void setDesiredState(SwerveModuleState desiredState) {
+        resyncInternalEncoder();
+
         if (RobotBase.isSimulation()) {
             sim.setDesiredState(desiredState);
         }
+        else if (!seeded) {
+            driveMotor.setReferenceMetresPerSecond(0, 0);
+            angleMotor.setReferenceDegrees(angleMotor.getPosition().getDegrees(), 0);
+        }
         else {
             Rotation2d currentHeading = angleMotor.getPosition();
 
@@ -86,22 +126,92 @@ public class SwerveModule {
 
             angleMotor.setReferenceDegrees(desiredState.angle.getDegrees(), 0);
         }
+    }
 
-        // Check to make sure this is not happening too frequently, using too much CAN traffic
-        updateInternalEncoder();
+    /**
+     * Reseed the steer motor encoder from the absolute encoder if it has drifted. Writing the
+     * position to the SparkMax is a CAN frame, so it is only done when the drift is over
+     * {@link #RESEED_THRESHOLD_DEG}, the module is nearly still (a turning module's two readings
+     * are taken at different times and disagree), and not more often than
+     * {@link #RESEED_MIN_INTERVAL_SEC}. Both readings are cached, so checking costs no CAN traffic.
+     * <p>
+     * The first seed, at startup or when the absolute encoder first becomes usable, is done
+     * unconditionally.
+     */
+    private void resyncInternalEncoder() {
+        double absolute = encoder.getAbsolutePositionInDegrees();
+        if (!isAbsoluteEncoderUsable()) {
+            return;
+        }
+        driftDeg = MathUtil.inputModulus(angleMotor.getPosition().getDegrees() - absolute, -180, 180);
+
+        double now = Timer.getFPGATimestamp();
+        if (!seeded
+            || (Math.abs(driftDeg) > RESEED_THRESHOLD_DEG
+                && Math.abs(encoder.getVelocityInDegreesPerSecond()) < RESEED_MAX_STEER_DEG_PER_SEC
+                && now - lastReseedTime >= RESEED_MIN_INTERVAL_SEC)) {
+            angleMotor.setInternalEncoderPositionDegrees(absolute);
+            lastReseedTime = now;
+            reseedCount++;
+            seeded         = true;
+        }
     }
 
-    private void updateInternalEncoder() {
-        double angle = encoder.getAbsolutePositionInDegrees();
+    /**
+     * Track whether the absolute encoder can be trusted. A module whose absolute encoder cannot be
+     * read is degraded: it keeps steering on the motor encoder, which holds its position from the
+     * last seed, and the absolute encoder is not used again until it has sent
+     * {@link #RECOVERY_READINGS} new samples in a row that read correctly. A sample is only counted
+     * once, however many times it is read before the next one arrives. Entering and leaving the
+     * degraded mode are reported once each.
+     *
+     * @return true if the absolute encoder can be used this loop
+     */
+    private boolean isAbsoluteEncoderUsable() {
         if (encoder.readingError) {
-            throw new IllegalStateException("Absolute encoder " + encoder.getDeviceId() + " could not be read.");
+            goodReadingsAtError = encoder.getGoodReadingCount();
+            if (!degraded) {
+                degraded = true;
+                DriverStation.reportWarning("Swerve module " + name + " degraded, absolute encoder "
+                    + encoder.getDeviceId() + " could not be read. Steering on the motor encoder.", false);
+            }
+            return false;
         }
-        angleMotor.setInternalEncoderPositionDegrees(angle);
+        if (degraded) {
+            if (encoder.getGoodReadingCount() - goodReadingsAtError < RECOVERY_READINGS) {
+                return false;
+            }
+            degraded = false;
+            DriverStation.reportWarning("Swerve module " + name + " recovered, absolute encoder "
+                + encoder.getDeviceId() + " is reading again.", false);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the module is steering without its absolute encoder
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Set the status frames of both motors for the robot mode
+     *
+     * @param mode the robot mode
+     */
+    void applyStatusFrames(StatusFramePolicy.Mode mode) {
+        driveMotor.applyStatusFrames(mode);
+        angleMotor.applyStatusFrames(mode);
     }
 
     public void updateTelemetry() {
         driveMotor.updateTelemetry();
         angleMotor.updateTelemetry();
         encoder.updateTelemetry();
+        SmartDashboard.putNumber("swerve/1310/module/" + name + "/encoder/driftDegrees", driftDeg);
+        SmartDashboard.putNumber("swerve/1310/module/" + name + "/encoder/reseeds", reseedCount);
+        SmartDashboard.putNumber("swerve/1310/module/" + name + "/encoder/ageSeconds", encoder.getAgeSeconds());
+        SmartDashboard.putBoolean("swerve/1310/module/" + name + "/degraded", degraded);
     }
 }
\ No newline at end of file
@@ -6,14 +6,16 @@ import java.io.File;
 
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import frc.robot.Constants;
 import frc.robot.subsystems.swerve.SwerveSubsystem;
-import frc.robot.subsystems.vision.HughVisionSubsystem;
+import frc.robot.subsystems.vision.LimelightCameraRegistry;
 import swervelib.SwerveDrive;
 import swervelib.SwerveModule;
 import swervelib.parser.SwerveParser;
@@ -31,8 +33,8 @@ public class YagslSubsystem extends SwerveSubsystem {
      *
      * @param configDirectory Directory of swerve drive config files.
      */
-    public YagslSubsystem(File configDirectory, HughVisionSubsystem visionSubsystem) {
-        super(visionSubsystem);
+    public YagslSubsystem(File configDirectory, LimelightCameraRegistry visionCameras) {
+        super(visionCameras);
         // Configure the Telemetry before creating the SwerveDrive to avoid unnecessary
         // objects being created.
         SwerveDriveTelemetry.verbosity = SwerveDriveTelemetry.TelemetryVerbosity.HIGH;
@@ -76,6 +78,16 @@ public class YagslSubsystem extends SwerveSubsystem {
         return swerveDrive.getPose();
     }
 
+    @Override
+    protected SwerveModulePosition[] getModulePositions() {
+        return swerveDrive.getModulePositions();
+    }
+
+    @Override
+    protected Rotation2d getGyroHeading() {
+        return swerveDrive.getYaw();
+    }
+
     @Override
     public void updateTelemetry() {
         // noop - done internally inside SwerveDrive
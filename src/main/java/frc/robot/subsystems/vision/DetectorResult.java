@@ -0,0 +1,13 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * A single object found by the neural detector pipeline.
+ *
+ * @param classId the line number (from 0) of the object class in the model's labelmap.txt
+ * @param confidence the detector confidence 0..1
+ * @param tx horizontal angle to the centre of the object in degrees, clockwise positive
+ * @param ty vertical angle to the centre of the object in degrees, up positive
+ * @param ta bounding box area as a percentage of the image
+ */
+public record DetectorResult(int classId, double confidence, double tx, double ty, double ta) {
+}
@@ -0,0 +1,46 @@
+package frc.robot.subsystems.vision;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+ * The AprilTag layout of the current field, loaded once from the deploy directory
+ * (src/main/deploy/apriltags). Tag locations are always in the blue alliance (wpiblue) origin, the
+ * same as the limelight botpose_wpiblue output.
+ */
+public final class FieldLayout {
+
+    /** The layout file for this season, in the deploy apriltags directory */
+    private static final String        LAYOUT_FILE = "apriltags/2024-crescendo.json";
+
+    private static AprilTagFieldLayout layout      = null;
+
+    private FieldLayout() {
+    }
+
+    /**
+     * Get the field layout. If the deployed layout cannot be read, the layout built into wpilib for
+     * this season is used.
+     *
+     * @return the layout
+     */
+    public static synchronized AprilTagFieldLayout get() {
+        if (layout == null) {
+            File file = new File(Filesystem.getDeployDirectory(), LAYOUT_FILE);
+            try {
+                layout = new AprilTagFieldLayout(file.toPath());
+            }
+            catch (IOException e) {
+                DriverStation.reportWarning("Unable to load " + file + ", using the built in layout: " + e, false);
+                layout = AprilTagFields.k2024Crescendo.loadAprilTagLayoutField();
+            }
+            layout.setOrigin(AprilTagFieldLayout.OriginPosition.kBlueAllianceWallRightSide);
+        }
+        return layout;
+    }
+}
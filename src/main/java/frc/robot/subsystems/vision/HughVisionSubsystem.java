@@ -1,8 +1,10 @@
 package frc.robot.subsystems.vision;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.DoubleFunction;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -10,163 +12,213 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.BotTarget;
+import frc.robot.Constants.VisionConstants.Camera;
 
 /**
  * Handles the April Tag Limelight On Shooter Side
  */
 public class HughVisionSubsystem extends SubsystemBase {
 
-    private static final long          LED_MODE_PIPELINE                    = 0;
-    private static final long          LED_MODE_OFF                         = 1;
+    private static final long                      LED_MODE_PIPELINE                    = 0;
+    private static final long                      LED_MODE_OFF                         = 1;
     @SuppressWarnings("unused")
-    private static final long          LED_MODE_BLINK                       = 2;
+    private static final long                      LED_MODE_BLINK                       = 2;
     @SuppressWarnings("unused")
-    private static final long          LED_MODE_ON                          = 3;
+    private static final long                      LED_MODE_ON                          = 3;
 
-    private static final long          CAM_MODE_VISION                      = 0;
-    private static final long          CAM_MODE_DRIVER                      = 1;
+    private static final long                      CAM_MODE_VISION                      = 0;
+    private static final long                      CAM_MODE_DRIVER                      = 1;
 
-    // configure more pipelines here
-    @SuppressWarnings("unused")
-    private static final long          PIPELINE_RETROREFLECTIVE_NOTE_DETECT = 1;
-    private static final long          PIPELINE_APRIL_TAG_DETECT            = 0;
-    private static final long          PIPELINE_VISUAL                      = 2;
 
+    private static final double                    TARGET_ALIGNMENT_THRESHOLD           = 7.5;
 
-    private static final double        TARGET_ALIGNMENT_THRESHOLD           = 7.5;
+    /** Keep the last target solution through frames where no target tag was decoded */
+    private static final double                    TARGET_HOLD_SEC                      = 0.2;
 
-    NetworkTable                       table                                = NetworkTableInstance.getDefault()
-        .getTable("limelight-hugh");
+    NetworkTable                                   table                                = NetworkTableInstance.getDefault()
+        .getTable(Camera.HUGH.name);
 
     // inputs/configs
-    NetworkTableEntry                  ledMode                              = table.getEntry("ledMode");
-    NetworkTableEntry                  camMode                              = table.getEntry("camMode");
-    NetworkTableEntry                  pipeline                             = table.getEntry("pipeline");
-
-    // output
-    NetworkTableEntry                  tv                                   = table.getEntry("tv");
-    NetworkTableEntry                  tx                                   = table.getEntry("tx");
-    NetworkTableEntry                  ty                                   = table.getEntry("ty");
-    NetworkTableEntry                  ta                                   = table.getEntry("ta");
+    NetworkTableEntry                              ledMode                              = table.getEntry("ledMode");
+    NetworkTableEntry                              camMode                              = table.getEntry("camMode");
+    NetworkTableEntry                              pipeline                             = table.getEntry("pipeline");
 
-    NetworkTableEntry                  tl                                   = table.getEntry("tl");
-    NetworkTableEntry                  cl                                   = table.getEntry("cl");
+    NetworkTableEntry                              priorityid                           = table.getEntry("priorityid");
 
-    NetworkTableEntry                  botpose_wpiblue                      = table.getEntry("botpose_wpiblue");
-    NetworkTableEntry                  botpose_wpired                       = table.getEntry("botpose_wpibred");
+    /** Reads and processes the limelight outputs on a worker thread */
+    private final LimelightCamera                  camera;
 
-    private static final int           BOTPOSE_INDEX_TX                     = 0;
-    private static final int           BOTPOSE_INDEX_TY                     = 1;
-    private static final int           BOTPOSE_INDEX_TZ                     = 2;
-    private static final int           BOTPOSE_INDEX_R                      = 3;
-    private static final int           BOTPOSE_INDEX_P                      = 4;
-    private static final int           BOTPOSE_INDEX_Y                      = 5;
-    private static final int           BOTPOSE_INDEX_LATENCY                = 6;
-    private static final int           BOTPOSE_INDEX_TAGCOUNT               = 7;
-    private static final int           BOTPOSE_INDEX_TAGSPAN                = 8;
-    private static final int           BOTPOSE_INDEX_AVGDIST                = 9;
-    private static final int           BOTPOSE_INDEX_AVGAREA                = 10;
+    /** Shares the camera between the pipelines the running commands need */
+    private final PipelineScheduler                pipelineScheduler;
 
-    NetworkTableEntry                  targetpose_robotspace                = table.getEntry("targetpose_robotspace");
+    /** The requesters that need the tag poses in camera space, from the limelight json */
+    private final Set<Object>                      tagDetailNeeds                       = Collections
+        .newSetFromMap(new IdentityHashMap<>());
 
-    NetworkTableEntry                  tid                                  = table.getEntry("tid");
-
-    NetworkTableEntry                  priorityid                           = table.getEntry("priorityid");
+    /**
+     * The robot pose at a past FPGA time, used to place the notes on the field. Asked for the current
+     * time it gives the latest pose, used to predict the visible tags.
+     */
+    private final DoubleFunction<Optional<Pose2d>> poseHistory;
 
-    NetworkTableEntry                  json                                 = table.getEntry("json");
+    /** Field positions of the notes found by the detector pipeline */
+    private final NoteTracker                      noteTracker;
+    /** Which notes are still on the field, and where */
+    private final NoteWorldModel                   noteWorldModel                       = new NoteWorldModel(FieldLayout.get());
+    private long                                   lastNoteFrameMicros                  = -1;
 
-    private BotTarget                  botTarget                            = BotTarget.NONE;
+    private BotTarget                              botTarget                            = BotTarget.NONE;
 
-    private static final List<Integer> TARGET_BLUE_SPEAKER                  = List.of(7, 8);
-    private static final List<Integer> TARGET_BLUE_SOURCE                   = List.of(9, 10);
-    private static final List<Integer> TARGET_BLUE_AMP                      = List.of(6);
-    private static final List<Integer> TARGET_BLUE_STAGE                    = List.of(14, 15, 16);
+    /** Maps each field target to the tags that mark it */
+    private final TargetTagTable                   targetTags                           = new TargetTagTable(FieldLayout.get());
 
-    private static final List<Integer> TARGET_RED_SPEAKER                   = List.of(4, 3);
-    private static final List<Integer> TARGET_RED_SOURCE                    = List.of(1, 2);
-    private static final List<Integer> TARGET_RED_AMP                       = List.of(5);
-    private static final List<Integer> TARGET_RED_STAGE                     = List.of(11, 12, 13);
-    private static final List<Integer> TARGET_NONE                          = List.of();
-    private static final List<Integer> TARGET_ALL                           = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13,
-        14, 15, 16);
+    private TagSet                                 activeAprilTagTargets                = targetTags.getAllTags();
 
-    private List<Integer>              activeAprilTagTargets                = TARGET_ALL;
+    /** Picks the tag of the bot target the camera should see best, for the limelight priority id */
+    private final TagVisibilityPredictor           tagPredictor;
+    /** The priority id last written to the limelight, or MIN_VALUE before the first write */
+    private int                                    priorityId                           = Integer.MIN_VALUE;
 
-    private static final double        SPEAKER_TAG_DELTA                    = 0.565868;
+    /** Finds the centre of the bot target from its visible tags */
+    private final TargetSolver                     targetSolver;
+    private TargetSolution                         targetSolution                       = null;
+    private long                                   lastSolvedFrameMicros                = -1;
 
-    public HughVisionSubsystem() {
-        this.pipeline.setNumber(PIPELINE_APRIL_TAG_DETECT);
+    /**
+     * @param camera the hugh limelight, from the camera registry
+     * @param poseHistory the robot pose at a past FPGA time, from the drive subsystem
+     */
+    public HughVisionSubsystem(LimelightCamera camera, DoubleFunction<Optional<Pose2d>> poseHistory) {
+        this.camera            = camera;
+        this.poseHistory       = poseHistory;
+        this.noteTracker       = new NoteTracker(camera.getCamera());
+        this.targetSolver      = new TargetSolver(targetTags, camera.getCamera());
+        this.tagPredictor      = new TagVisibilityPredictor(FieldLayout.get(), camera.getCamera());
+        this.pipelineScheduler = new PipelineScheduler(camera, index -> this.pipeline.setNumber(index));
+        this.pipelineScheduler.update(Timer.getFPGATimestamp());
         this.camMode.setNumber(CAM_MODE_VISION);
         this.ledMode.setNumber(LED_MODE_ON);
+        setPriorityId(-1);
     }
 
     @Override
     public void periodic() {
-        // read values periodically and post to smart dashboard periodically
-        double[]           bp          = getBotPose();
-        AprilTagInfo[]     visibleTags = getVisibleTagInfo();
-        double             avgDist     = getTargetAvgDistance();
-        VisionPositionInfo visPos      = getPositionInfo(bp, visibleTags.length, avgDist);
+        pipelineScheduler.update(Timer.getFPGATimestamp());
+        camera.setJsonWanted(isJsonDetailNeeded());
+        updatePriorityId();
+        updateNoteTracker();
+        updateTargetSolution();
+
+        // post to smart dashboard periodically
+        VisionFrame        frame  = getFrame();
+        VisionPositionInfo visPos = frame.getPositionInfo();
 
         SmartDashboard.putString("VisionHugh/BotTarget", getBotTarget().toString());
         SmartDashboard.putString("VisionHugh/PriorityId", "" + getPriorityId());
         SmartDashboard.putBoolean("VisionHugh/Target Found", isCurrentTargetVisible());
-        SmartDashboard.putNumber("VisionHugh/tid", tid.getDouble(-1.0));
-        SmartDashboard.putNumber("VisionHugh/tx", tx.getDouble(-1.0));
-        SmartDashboard.putNumber("VisionHugh/ty", ty.getDouble(-1.0));
-        SmartDashboard.putNumber("VisionHugh/ta", ta.getDouble(-1.0));
-        SmartDashboard.putNumber("VisionHugh/tl", tl.getDouble(-1.0));
-        SmartDashboard.putString("VisionHugh/Botpose", Arrays.toString(bp));
-        SmartDashboard.putNumber("VisionHugh/TargetAvgDist", avgDist);
+        SmartDashboard.putNumber("VisionHugh/tid", frame.getTid());
+        SmartDashboard.putNumber("VisionHugh/tx", frame.getTx());
+        SmartDashboard.putNumber("VisionHugh/ty", frame.getTy());
+        SmartDashboard.putNumber("VisionHugh/ta", frame.getTa());
+        SmartDashboard.putNumber("VisionHugh/tl", frame.getTl());
+        SmartDashboard.putString("VisionHugh/Botpose", frame.botPoseToString());
+        SmartDashboard.putNumber("VisionHugh/TargetAvgDist", frame.getTargetAvgDistance());
         SmartDashboard.putString("VisionHugh/PoseConf", visPos == null ? "NONE" : visPos.poseConfidence().toString());
-        SmartDashboard.putString("VisionHugh/NumTags", "" + getNumActiveTargets());
-        SmartDashboard.putString("VisionHugh/AprilTagInfo", aprilTagInfoArrayToString(visibleTags));
+        SmartDashboard.putString("VisionHugh/NumTags", "" + frame.getNumActiveTargets());
+        SmartDashboard.putString("VisionHugh/AprilTagInfo", frame.visibleTagsToString());
+        SmartDashboard.putNumber("VisionHugh/DroppedPoses", camera.getDroppedPositionInfoCount());
+        SmartDashboard.putString("VisionHugh/Pipeline", String.valueOf(pipelineScheduler.getActivePipeline()));
+        SmartDashboard.putNumber("VisionHugh/PipelineSwitchDelay", camera.getLastSwitchDelaySeconds());
+        SmartDashboard.putString("VisionHugh/Notes", noteTracker.tracksToString());
+        SmartDashboard.putString("VisionHugh/FieldNotes", noteWorldModel.toString());
         SmartDashboard.putNumber("VisionHugh/DistToTarget", getDistanceToTargetMetres());
         SmartDashboard.putBoolean("VisionHugh/AlignedWithTarget", isAlignedWithTarget());
-        SmartDashboard.putString("VisionHugh/TargetOffset", getTargetOffset() == null ? "null" : getTargetOffset().toString());
+        Rotation2d targetOffset = getTargetOffset();
+        SmartDashboard.putString("VisionHugh/TargetOffset", targetOffset == null ? "null" : targetOffset.toString());
     }
 
     /**
-     * Get the limelight coordinates for the target (i.e. with respect to the limelight origin, NOT
-     * the robot!!)
+     * Get the snapshot of the most recent limelight frame. Frames from the wrong pipeline or from
+     * the warm-up after a pipeline switch are not returned.
      *
-     * @return limelight target coordinates
+     * @return the latest valid frame, or an empty frame. Never null.
      */
-    private double[] getTarget() {
-        double[] d = new double[2];
-        d[0] = tx.getDouble(Double.MIN_VALUE);
-        d[1] = ty.getDouble(Double.MIN_VALUE);
-        return d;
+    private VisionFrame getFrame() {
+        VisionFrame frame = camera.getLatestFrame();
+        return frame.isValid() ? frame : VisionFrame.EMPTY;
     }
 
     /**
-     * Get the limelight X angle measurement to the target.
-     *
-     * @return limelight X target coordinates
+     * Feed each new frame from the detector pipeline to the note tracker, with the robot pose at
+     * the time the frame was captured.
      */
-    private double getTargetX() {
-        return tx.getDouble(Double.MIN_VALUE);
+    private void updateNoteTracker() {
+        VisionFrame frame = camera.getLatestFrame();
+        if (!frame.isValid() || frame.getPipelineIndex() != LimelightPipeline.NOTE_DETECTOR.index
+            || frame.getTimestampMicros() == lastNoteFrameMicros) {
+            return;
+        }
+        lastNoteFrameMicros = frame.getTimestampMicros();
+
+        Optional<Pose2d> robotPose = poseHistory.apply(frame.getTimestampSeconds());
+        if (robotPose.isPresent()) {
+            noteTracker.update(frame, robotPose.get());
+            noteWorldModel.update(noteTracker);
+        }
     }
 
     /**
-     * Get the limelight Y angle measurement to the target.
+     * Solve for the centre of the bot target once per new frame, with the robot heading at the time
+     * the frame was captured. A solution is held for {@link #TARGET_HOLD_SEC} so that a frame
+     * without a target tag does not drop the target.
+     */
+    private void updateTargetSolution() {
+        VisionFrame frame = getFrame();
+        if (frame.getTimestampMicros() == lastSolvedFrameMicros) {
+            return;
+        }
+        lastSolvedFrameMicros = frame.getTimestampMicros();
+
+        // with no specific target, aim for the target marked by the primary tag
+        BotTarget        target    = botTarget == BotTarget.ALL ? targetTags.getTarget(frame.getTid()) : botTarget;
+        Optional<Pose2d> robotPose = poseHistory.apply(frame.getTimestampSeconds());
+        TargetSolution   solution  = target == BotTarget.NONE ? null
+            : targetSolver.solve(frame, target, robotPose.map(Pose2d::getRotation).orElse(null));
+
+        if (solution != null) {
+            targetSolution = solution;
+        }
+        else if (targetSolution != null && Timer.getFPGATimestamp() - targetSolution.timestampSeconds() > TARGET_HOLD_SEC) {
+            targetSolution = null;
+        }
+    }
+
+    /**
+     * The json detail is needed for the tag poses in camera space while a requester needs them, and
+     * for the detector results while the note detector pipeline runs. Otherwise the rawfiducials
+     * give the visible tags.
      *
-     * @return limelight Y target coordinates
+     * @return true if the json detail is used now
      */
-    private double getTargetY() {
-        return ty.getDouble(Double.MIN_VALUE);
+    private boolean isJsonDetailNeeded() {
+        return !tagDetailNeeds.isEmpty()
+            || pipelineScheduler.getActivePipeline() == LimelightPipeline.NOTE_DETECTOR;
     }
 
     /**
-     * Sets the priority Tag ID
+     * Sets the priority Tag ID. The limelight is only written when the id changes.
      *
-     * @return limelight Y target coordinates
+     * @param tagId the tag id, -1 for no priority
      */
-    private void setPriorityId(double tagId) {
-        priorityid.setDouble(tagId);
+    private void setPriorityId(int tagId) {
+        if (tagId != priorityId) {
+            priorityid.setDouble(tagId);
+            priorityId = tagId;
+        }
     }
 
     /**
@@ -174,203 +226,124 @@ public class HughVisionSubsystem extends SubsystemBase {
      *
      * @return priority tag id. -1 means no priority
      */
-    private double getPriorityId() {
-        return priorityid.getDouble(-1);
+    private int getPriorityId() {
+        return priorityId;
     }
 
     /**
-     * Gets the average target distance
-     *
-     * @return Average distance to target in meters. If no value, returns Double.MAX_VALUE.
+     * Point the limelight at the tag of the bot target the camera should see best from the current
+     * pose, so that the primary target is a target tag from the first frame it is in view. The
+     * centre tag of the target is used until one of its tags is predicted visible.
      */
-    private double getTargetAvgDistance() {
-        double[] botPose = getBotPose();
-        if (botPose == null || botPose.length < 11 || botPose[BOTPOSE_INDEX_AVGDIST] == Double.MIN_VALUE) {
-            return Double.MAX_VALUE;
+    private void updatePriorityId() {
+        int centreTag = targetTags.getPriorityTag(botTarget);
+        if (centreTag < 0) {
+            // no priority for ALL and NONE
+            setPriorityId(-1);
+            return;
         }
 
-        return botPose[BOTPOSE_INDEX_AVGDIST];
+        Optional<Pose2d> robotPose = poseHistory.apply(Timer.getFPGATimestamp());
+        int              best      = robotPose.isEmpty() ? -1
+            : tagPredictor.choosePriorityTag(robotPose.get(), activeAprilTagTargets, priorityId);
+        setPriorityId(best >= 0 ? best : centreTag);
     }
 
     /**
-     * Performs a String based parsing of limelight's json blob in order to obtain9 information on
-     * multiple targets when they are in view, since limelight only gives easy access to the
-     * closest/largest one. Not using JSON parsers libs due to up to 2.5ms parsing time.
      *
-     * @return An array of AprilTagInfo objects, each representing a visible target.
+     * PUBLIC API FROM HERE DOWN
+     *
      */
-    private AprilTagInfo[] getVisibleTagInfo() {
-        String                  jsonStr = json.getString(null);
-        ArrayList<AprilTagInfo> tags    = new ArrayList<AprilTagInfo>();
-
-        if (jsonStr != null) {
-            int index = 0;
-            while (index != -1) {
-                index = jsonStr.indexOf("\"fID\":", index);
-                if (index == -1)
-                    break; // No more fID found
-
-                // Get Tag ID
-                int    fIDStart    = index + 6;
-                int    fIDEnd      = jsonStr.indexOf(",", fIDStart);
-                String fID         = jsonStr.substring(fIDStart, fIDEnd).trim();
-
-                // Get yTranslation (1st element of array)
-                int    yTransIndex = jsonStr.indexOf("\"t6t_rs\":", fIDEnd);
-                int    yTransStart = yTransIndex + 10;
-                int    yTransEnd   = jsonStr.indexOf(",", yTransStart);
-                String yTransStr   = jsonStr.substring(yTransStart, yTransEnd).trim();
-
-                // Get xTranslation (3rd element of array)
-                int    xTransIndex = jsonStr.indexOf(",", yTransEnd + 1);
-                int    xTransStart = xTransIndex + 1;
-                int    xTransEnd   = jsonStr.indexOf(",", xTransStart);
-                String xTransStr   = jsonStr.substring(xTransStart, xTransEnd).trim();
-
-                // Get xOffset
-                int    txIndex     = jsonStr.indexOf("\"tx\":", fIDEnd);
-                int    txStart     = txIndex + 5;
-                int    txEnd       = jsonStr.indexOf(",", txStart);
-                if (txEnd == -1) { // Check if tx is the last value before the object ends
-                    txEnd = jsonStr.indexOf("}", txStart);
-                }
-                String       tx             = jsonStr.substring(txStart, txEnd).trim();
-
-                int          tagId          = Integer.parseInt(fID);
-                double       xOffset        = Double.parseDouble(tx);
-                double       xTrans         = Double.parseDouble(xTransStr);
-                double       yTrans         = Double.parseDouble(yTransStr);
-                double       targetDistance = Math.hypot(xTrans, yTrans);
-
-                AprilTagInfo ati            = new AprilTagInfo(tagId, xOffset, xTrans, yTrans, targetDistance);
-                tags.add(ati);
-
-                index = txEnd; // Move index to end of the current tx to find the next fID
-            }
-        }
 
-        AprilTagInfo[] tagRet = new AprilTagInfo[tags.size()];
-        return tags.toArray(tagRet);
+    /**
+     * Get the position of the robot as computed by the Vision Subsystem. Includes latency data.
+     * 
+     * If no valid position can be returned (due to bad or erratic data, blocked view, etc.),
+     * returns null
+     * 
+     * @return position info or null
+     * @since 2024-02-10
+     */
+    public VisionPositionInfo getPositionInfo() {
+        return getFrame().getPositionInfo();
     }
 
-    private String aprilTagInfoArrayToString(AprilTagInfo[] tagArray) {
-        if (tagArray == null || tagArray.length == 0) {
-            return "[]";
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < tagArray.length; i++) {
-            AprilTagInfo tag = tagArray[i];
-            sb.append("[Tag:");
-            sb.append(tag.tagId());
-            sb.append(",xDeg:");
-            sb.append(tag.xAngle());
-            sb.append(",Dist:");
-            sb.append(tag.targetDistance());
-            sb.append("]");
-            if (i < tagArray.length - 1) {
-                sb.append(",");
-            }
-        }
-        sb.append("]");
-        return sb.toString();
+    /**
+     * Request a pipeline needed now, e.g. by a command while it is running. Replaces any earlier
+     * request by the same requester.
+     *
+     * @param requester the requester, normally the command
+     * @param pipeline the pipeline
+     * @see PipelineScheduler
+     */
+    public void needPipeline(Object requester, LimelightPipeline pipeline) {
+        pipelineScheduler.need(requester, pipeline);
     }
 
-    private int getNumActiveTargets() {
-        double[] botPose = getBotPose();
-        if (botPose == null || botPose.length < 11 || botPose[BOTPOSE_INDEX_TAGCOUNT] == Double.MIN_VALUE) {
-            return 0;
-        }
-
-        return (int) botPose[BOTPOSE_INDEX_TAGCOUNT];
+    /**
+     * Request a pipeline that will be needed soon, so that the switch happens before it is needed.
+     *
+     * @param requester the requester, normally the command
+     * @param pipeline the pipeline
+     * @see PipelineScheduler
+     */
+    public void preparePipeline(Object requester, LimelightPipeline pipeline) {
+        pipelineScheduler.prepare(requester, pipeline);
     }
 
-    private double[] getBotPose() {
-        double[] botpose = botpose_wpiblue.getDoubleArray(new double[] { Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE,
-                Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE,
-                Double.MIN_VALUE, Double.MIN_VALUE });
-        if (botpose[0] == Double.MIN_VALUE) {
-            return null;
-        }
-
-        return botpose;
+    /**
+     * Withdraw the pipeline request of the requester
+     *
+     * @param requester the requester
+     */
+    public void releasePipeline(Object requester) {
+        pipelineScheduler.release(requester);
     }
 
-    private static Pose2d toPose2D(double[] inData) {
-        if (inData.length < 6) {
-            System.err.println("Bad LL 2D Pose Data!");
-            return new Pose2d();
-        }
-        Translation2d tran2d = new Translation2d(inData[0], inData[1]);
-        // Add 180deg to rotation because Hugh is on rear of bot
-        Rotation2d    r2d    = Rotation2d.fromDegrees((inData[5] + 180) % 360);
-        return new Pose2d(tran2d, r2d);
+    /**
+     * Withdraw every pipeline preparation. Call when the robot changes mode, so that a preparation
+     * for a command that never ran does not hold the camera.
+     */
+    public void releasePipelinePreparations() {
+        pipelineScheduler.releasePreparations();
     }
 
     /**
-     * Get the position of the robot as computed by the Vision Subsystem. Includes latency data.
-     *
-     * If no valid position can be returned (due to bad or erratic data, blocked view, etc.),
-     * returns null
+     * Request the tag poses in camera space, e.g. by a command aligning on a target while it is
+     * running. Without them the target solution uses the tag positions worked out from rawfiducials,
+     * which are less accurate.
      *
-     * @return position info or null
-     * @since 2024-02-10
+     * @param requester the requester, normally the command
      */
-    private VisionPositionInfo getPositionInfo(double[] botPose, int numTargets, double avgTargetDistance) {
-        // If No Pose, No Targets Visible, or Bot is floating in mid air, return null
-        if (botPose == null || numTargets < 1 || botPose[2] > 1) {
-            return null;
-        }
-
-        double         latency        = botPose[6];
-        Pose2d         pose           = toPose2D(botPose);
-
-        PoseConfidence poseConfidence = PoseConfidence.NONE;
-
-        if (numTargets == 1) {
-            if (avgTargetDistance <= 2) {
-                poseConfidence = PoseConfidence.HIGH;
-            }
-            else if (avgTargetDistance <= 2.4) {
-                poseConfidence = PoseConfidence.MEDIUM;
-            }
-            else if (avgTargetDistance <= 2.8) {
-                poseConfidence = PoseConfidence.LOW;
-            }
-        }
-        else { // numTargets > 1
-            if (avgTargetDistance <= 5) {
-                poseConfidence = PoseConfidence.HIGH;
-            }
-            else if (avgTargetDistance <= 6) {
-                poseConfidence = PoseConfidence.MEDIUM;
-            }
-            else if (avgTargetDistance <= 7) {
-                poseConfidence = PoseConfidence.LOW;
-            }
-        }
-
-        return new VisionPositionInfo(pose, latency, poseConfidence);
+    public void needTagDetail(Object requester) {
+        tagDetailNeeds.add(requester);
     }
 
     /**
+     * Withdraw the tag detail request of the requester
      *
-     * PUBLIC API FROM HERE DOWN
-     *
+     * @param requester the requester
      */
+    public void releaseTagDetail(Object requester) {
+        tagDetailNeeds.remove(requester);
+    }
 
     /**
-     * Get the position of the robot as computed by the Vision Subsystem. Includes latency data.
-     * 
-     * If no valid position can be returned (due to bad or erratic data, blocked view, etc.),
-     * returns null
-     * 
-     * @return position info or null
-     * @since 2024-02-10
+     * @param pipeline the pipeline
+     * @return true if the pipeline is running and its frames are valid
      */
-    public VisionPositionInfo getPositionInfo() {
-        return getPositionInfo(getBotPose(), getNumActiveTargets(), getTargetAvgDistance());
+    public boolean isPipelineReady(LimelightPipeline pipeline) {
+        return pipelineScheduler.isReady(pipeline);
+    }
+
+    /**
+     * Get the model of the notes on the field. Notes are only seen while the
+     * {@link LimelightPipeline#NOTE_DETECTOR} pipeline runs, so request it while a note is needed.
+     *
+     * @return the note world model
+     */
+    public NoteWorldModel getNoteWorldModel() {
+        return noteWorldModel;
     }
 
     /**
@@ -389,28 +362,17 @@ public class HughVisionSubsystem extends SubsystemBase {
      */
     public void setBotTarget(BotTarget botTarget) {
 
-        this.botTarget = botTarget;
-
-        switch (botTarget) {
-        case BLUE_SPEAKER -> activeAprilTagTargets = TARGET_BLUE_SPEAKER;
-        case BLUE_AMP -> activeAprilTagTargets = TARGET_BLUE_AMP;
-        case BLUE_SOURCE -> activeAprilTagTargets = TARGET_BLUE_SOURCE;
-        case BLUE_STAGE -> activeAprilTagTargets = TARGET_BLUE_STAGE;
-        case RED_SPEAKER -> activeAprilTagTargets = TARGET_RED_SPEAKER;
-        case RED_AMP -> activeAprilTagTargets = TARGET_RED_AMP;
-        case RED_SOURCE -> activeAprilTagTargets = TARGET_RED_SOURCE;
-        case RED_STAGE -> activeAprilTagTargets = TARGET_RED_STAGE;
-        case NONE -> activeAprilTagTargets = TARGET_NONE;
-        case ALL -> activeAprilTagTargets = TARGET_ALL;
-        default -> throw new IllegalArgumentException(botTarget.toString());
+        TagSet tags = targetTags.getTags(botTarget);
+        if (tags.isEmpty() && botTarget != BotTarget.NONE) {
+            throw new IllegalArgumentException(botTarget + " is not marked by any AprilTag");
         }
 
-        if (botTarget == BotTarget.ALL || botTarget == BotTarget.NONE) {
-            setPriorityId(-1);
-        }
-        else {
-            setPriorityId(activeAprilTagTargets.get(0));
-        }
+        this.botTarget        = botTarget;
+        activeAprilTagTargets = tags;
+        targetSolution        = null;
+        lastSolvedFrameMicros = -1;
+
+        updatePriorityId();
     }
 
     /**
@@ -420,8 +382,7 @@ public class HughVisionSubsystem extends SubsystemBase {
      * @since 2024-02-10
      */
     public boolean isCurrentTargetVisible() {
-        AprilTagInfo[] visibleTags = getVisibleTagInfo();
-        return Arrays.stream(visibleTags).anyMatch(tag -> activeAprilTagTargets.contains(tag.tagId()));
+        return activeAprilTagTargets.intersects(getFrame().getVisibleTagIds());
     }
 
     /**
@@ -431,7 +392,14 @@ public class HughVisionSubsystem extends SubsystemBase {
      * @return true if the robot is aligned to the target, and a target tag is visible.
      */
     public boolean isAlignedWithTarget() {
-        Rotation2d targetOffset = getTargetOffset();
+        return isAligned(getTargetOffset());
+    }
+
+    /**
+     * @param targetOffset the angle to the target centre from the camera, or null
+     * @return true if the offset is within TARGET_ALIGNMENT_THRESHOLD of aligned
+     */
+    static boolean isAligned(Rotation2d targetOffset) {
         return targetOffset != null
             && targetOffset.getDegrees() > 180 - TARGET_ALIGNMENT_THRESHOLD
             && targetOffset.getDegrees() < 180 + TARGET_ALIGNMENT_THRESHOLD;
@@ -451,62 +419,36 @@ public class HughVisionSubsystem extends SubsystemBase {
     }
 
     /**
-     * Obtains the relative heading to the target, if any of the target's tags are in sight.
+     * Obtains the relative heading to the centre of the target, if any of the target's tags are in
+     * sight.
      *
-     * @return Rotation2d with the angle to target from center of bot (0,0). null if no targets are
-     * visible.
+     * @return Rotation2d with the angle to the target centre from the camera, counter-clockwise
+     * positive. null if no targets are visible.
+     * @see TargetSolver
      */
     public Rotation2d getTargetOffset() {
-        int      currentTagId         = (int) tid.getInteger(-1);
-        double[] targetPoseInBotSpace = targetpose_robotspace.getDoubleArray(new double[] { Double.MIN_VALUE, Double.MIN_VALUE,
-                Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE });
-        double   angleToTag           = getTargetX();
-        double   tagX                 = targetPoseInBotSpace[2];
-        double   tagY                 = targetPoseInBotSpace[0];
-
-        if (!activeAprilTagTargets.contains(currentTagId) || angleToTag == Double.MIN_VALUE
-            || targetPoseInBotSpace[0] == Double.MIN_VALUE) {
-            return null;
-        }
-
-        // If we are targeting the blue speaker, and the current tag is the one on the left of
-        // centre, we need to do some math to determine proper location towards center
-        if ((botTarget == BotTarget.BLUE_SPEAKER && currentTagId == 8) ||
-            (botTarget == BotTarget.RED_SPEAKER && currentTagId == 3)) {
-            double radiansToTarget = Math.toRadians(angleToTag);
-            double y_offset        = Math.cos(radiansToTarget) * SPEAKER_TAG_DELTA;
-            double x_offset        = Math.sin(radiansToTarget) * SPEAKER_TAG_DELTA;
-
-            double newTagX         = tagX + x_offset;
-            double newTagY         = tagY + y_offset;
-
-            angleToTag = Math.toDegrees(Math.atan2(newTagY, newTagX));
-        }
-
-        // Limelight is Clockwise Positive, but Drive/Odemetry is CCW positive, so we switch signs
-        return Rotation2d.fromDegrees(-angleToTag);
+        return targetSolution == null ? null : targetSolution.cameraBearing();
     }
 
     /**
-     * Obtains the x & y translation of the robot to the target, if any of the target's tags are in
-     * sight.
+     * Obtains the x & y translation of the robot to the centre of the target, if any of the
+     * target's tags are in sight.
      *
-     * @return Translation2d with the x&y to target from center of bot (0,0). null if no targets are
-     * visible.
+     * @return Translation2d with the x&y to the target centre from center of bot (0,0), robot
+     * relative. null if no targets are visible.
      */
     public Translation2d getRobotTranslationToTarget() {
-        int      currentTagId         = (int) tid.getInteger(-1);
-        double[] targetPoseInBotSpace = targetpose_robotspace.getDoubleArray(new double[] { Double.MIN_VALUE, Double.MIN_VALUE,
-                Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE });
-
-        if (!activeAprilTagTargets.contains(currentTagId) || targetPoseInBotSpace[0] == Double.MIN_VALUE) {
-            return null;
-        }
+        return targetSolution == null ? null : targetSolution.robotToTarget();
+    }
 
-        // Limelight is returning [0] = X = Left/Right, [1] = Y = Height, [2] = Z = Forward/Back.
-        // We need to return X = Forward/Back, and Y = Left/Right
-        // Because Hugh is on the back of the Bot, X needs to have its sign reversed.
-        return new Translation2d(-targetPoseInBotSpace[2], targetPoseInBotSpace[0]);
+    /**
+     * Get the full solution for the centre of the target, including the time of the frame it was
+     * solved from.
+     *
+     * @return the latest solution, or null if no targets are visible
+     */
+    public TargetSolution getTargetSolution() {
+        return targetSolution;
     }
 
     @Override
@@ -0,0 +1,81 @@
+package frc.robot.subsystems.vision;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies over fixed millisecond buckets. Recording is a short scan of the bucket
+ * bounds and never allocates. Percentiles are reported as the upper bound of the bucket they fall
+ * in, which is plenty to tell a 30 ms pipeline from a 120 ms one.
+ * <p>
+ * Not thread safe, used from the robot loop.
+ */
+public final class LatencyHistogram {
+
+    /** Upper bounds of the buckets in milliseconds. The last bucket has no upper bound. */
+    private static final double[] BUCKET_BOUNDS_MS = { 5, 10, 15, 20, 25, 30, 40, 50, 60, 80, 100, 150, 200, 300, 500,
+        1000 };
+
+    private final long[]          counts           = new long[BUCKET_BOUNDS_MS.length + 1];
+    private long                  count            = 0;
+    private double                sumMs            = 0;
+    private double                maxMs            = 0;
+
+    /**
+     * @param ms the latency in milliseconds
+     */
+    public void record(double ms) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && ms > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sumMs += ms;
+        maxMs  = Math.max(maxMs, ms);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean latency in milliseconds, or 0 if nothing was recorded
+     */
+    public double getMeanMs() {
+        return count == 0 ? 0 : sumMs / count;
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    /**
+     * @param fraction the percentile as a fraction, e.g. 0.95
+     * @return the upper bound of the bucket holding the percentile in milliseconds (the maximum for
+     * the last bucket), or 0 if nothing was recorded
+     */
+    public double getPercentileMs(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank       = (long) Math.ceil(fraction * count);
+        long cumulative = 0;
+        for (int bucket = 0; bucket < BUCKET_BOUNDS_MS.length; bucket++) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+                return Math.min(BUCKET_BOUNDS_MS[bucket], maxMs);
+            }
+        }
+        return maxMs;
+    }
+
+    /**
+     * Clear the histogram, e.g. at the start of a new reporting period
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sumMs = 0;
+        maxMs = 0;
+    }
+}
@@ -0,0 +1,636 @@
+package frc.robot.subsystems.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableListenerPoller;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * Reads and interprets the outputs of a single limelight.
+ * <p>
+ * All of the NetworkTables reads, json parsing and pose confidence scoring run on a dedicated
+ * worker thread that wakes whenever the limelight publishes. Finished results are handed to the
+ * robot loop without locks: the latest {@link VisionFrame} through an atomic reference, and the
+ * position info from every frame through a single-producer / single-consumer ring. Reading either
+ * from the robot loop is O(1) and never blocks.
+ * <p>
+ * The json blob is only read while its detail (tag poses in camera space, detector results) is
+ * {@link #setJsonWanted(boolean) wanted}. The rest of the time the json subscription is closed and the
+ * visible tags come from the fixed size rawfiducials array. This saves the copy of the several
+ * kilobyte blob into the subscriber and its parse on every frame. It does not save network
+ * bandwidth: the limelight still publishes the json to the NetworkTables server on the robot, and the
+ * {@link VisionRecorder} subscribes to every limelight topic while it records.
+ */
+public class LimelightCamera {
+
+    private static final int                      BOTPOSE_INDEX_TX       = 0;
+    private static final int                      BOTPOSE_INDEX_TY       = 1;
+    private static final int                      BOTPOSE_INDEX_TZ       = 2;
+    private static final int                      BOTPOSE_INDEX_R        = 3;
+    private static final int                      BOTPOSE_INDEX_P        = 4;
+    private static final int                      BOTPOSE_INDEX_Y        = 5;
+    private static final int                      BOTPOSE_INDEX_LATENCY  = 6;
+    private static final int                      BOTPOSE_INDEX_TAGCOUNT = 7;
+    private static final int                      BOTPOSE_INDEX_TAGSPAN  = 8;
+    private static final int                      BOTPOSE_INDEX_AVGDIST  = 9;
+    private static final int                      BOTPOSE_INDEX_AVGAREA  = 10;
+
+    /** Values per tag in rawfiducials: id, txnc, tync, ta, distToCamera, distToRobot, ambiguity */
+    private static final int                      RAWFIDUCIAL_SIZE       = 7;
+    private static final int                      RAWFIDUCIAL_INDEX_ID   = 0;
+    private static final int                      RAWFIDUCIAL_INDEX_TX   = 1;
+    private static final int                      RAWFIDUCIAL_INDEX_TY   = 2;
+    private static final int                      RAWFIDUCIAL_INDEX_DIST = 4;
+
+    /**
+     * The number of values NetworkTables will queue for a subscriber between reads. The limelight
+     * can publish at up to 90fps, so this comfortably covers a few slow worker wakeups.
+     */
+    private static final int                      SUBSCRIBER_QUEUE_DEPTH = 20;
+
+    /** The number of position infos that can wait for the robot loop before new ones are dropped */
+    private static final int                      POSITION_RING_SIZE     = 64;
+
+    /** How long the worker waits for a limelight update before checking again */
+    private static final double                   WORKER_WAIT_SEC        = 0.1;
+
+    private final Camera                          camera;
+    private final String                          name;
+
+    /** Converts the camera pose reported by the limelight into the robot pose */
+    private final Transform2d                     cameraToRobot;
+
+    private final NetworkTable                    table;
+
+    // output - the limelight publishes all numeric outputs as doubles
+    private final DoubleSubscriber                tx;
+    private final DoubleSubscriber                ty;
+    private final DoubleSubscriber                ta;
+    private final DoubleSubscriber                tl;
+    private final DoubleSubscriber                cl;
+    private final DoubleSubscriber                tid;
+    /** The pipeline the limelight is actually running */
+    private final DoubleSubscriber                getpipe;
+
+    /**
+     * Every botpose published since the last read is taken from the queue, so that no frame is lost
+     * when the limelight publishes faster than it is read.
+     */
+    private final DoubleArraySubscriber           botpose_wpiblue;
+    private final DoubleArraySubscriber           rawfiducials;
+
+    /** Worker thread only. Open only while the json detail is wanted. */
+    private StringSubscriber                      json                   = null;
+    private volatile boolean                      jsonWanted             = false;
+
+    /** Heartbeat, incremented by the limelight once per frame. Its timestamp identifies the frame. */
+    private final DoubleSubscriber                hb;
+
+    /** Worker thread only */
+    private final LimelightJsonParser             jsonParser             = new LimelightJsonParser();
+    /** Worker thread only, the last botpose read, to recognize the same frame published again */
+    private TimestampedDoubleArray                lastBotPose            = null;
+    private final NetworkTableListenerPoller      poller;
+    private final Thread                          worker;
+
+    // handoff from the worker to the robot loop
+    private final AtomicReference<VisionFrame>    latestFrame            = new AtomicReference<>(VisionFrame.EMPTY);
+    private final SpscRing<VisionPositionInfo>    newPositionInfo        = new SpscRing<>(POSITION_RING_SIZE);
+    private volatile long                         processedFrameCount    = 0;
+
+    private final VisionMetrics                   metrics;
+
+    /**
+     * The pipeline the camera has been switched to, set by the {@link PipelineScheduler}. Null if
+     * pipelines are not scheduled, in which case every frame is valid.
+     */
+    private volatile PipelineExpectation          expectation            = null;
+    /** Worker thread only, the expectation whose switch delay has been measured */
+    private PipelineExpectation                   measuredExpectation    = null;
+    private volatile double                       lastSwitchDelaySec     = Double.NaN;
+
+    /**
+     * @param index the pipeline index the camera should report
+     * @param switchTime the FPGA time the pipeline was requested
+     * @param validAfter the FPGA capture time after which frames are valid
+     */
+    private record PipelineExpectation(int index, double switchTime, double validAfter) {
+    }
+
+    /**
+     * Start reading a limelight.
+     *
+     * @param camera the camera configuration
+     */
+    public LimelightCamera(Camera camera) {
+        this(NetworkTableInstance.getDefault(), camera);
+    }
+
+    /**
+     * Start reading a limelight from a NetworkTables instance, e.g. an instance fed by
+     * {@link VisionReplayer}.
+     *
+     * @param inst the NetworkTables instance
+     * @param camera the camera configuration
+     */
+    public LimelightCamera(NetworkTableInstance inst, Camera camera) {
+        this.camera        = camera;
+        this.name          = camera.name;
+        this.cameraToRobot = camera.robotToCamera.inverse();
+        this.metrics       = new VisionMetrics(name);
+
+        this.table         = inst.getTable(name);
+
+        tx              = table.getDoubleTopic("tx").subscribe(Double.MIN_VALUE);
+        ty              = table.getDoubleTopic("ty").subscribe(Double.MIN_VALUE);
+        ta              = table.getDoubleTopic("ta").subscribe(Double.MIN_VALUE);
+        tl              = table.getDoubleTopic("tl").subscribe(Double.MIN_VALUE);
+        cl              = table.getDoubleTopic("cl").subscribe(Double.MIN_VALUE);
+        tid             = table.getDoubleTopic("tid").subscribe(-1);
+        getpipe         = table.getDoubleTopic("getpipe").subscribe(-1);
+        botpose_wpiblue = table.getDoubleArrayTopic("botpose_wpiblue")
+            .subscribe(new double[0], PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(SUBSCRIBER_QUEUE_DEPTH));
+        rawfiducials    = table.getDoubleArrayTopic("rawfiducials").subscribe(new double[0]);
+        hb              = table.getDoubleTopic("hb")
+            .subscribe(0, PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(SUBSCRIBER_QUEUE_DEPTH));
+
+        // wake the worker whenever a new frame (heartbeat) or pose is published
+        poller          = new NetworkTableListenerPoller(inst);
+        poller.addListener(hb, EnumSet.of(NetworkTableEvent.Kind.kValueAll));
+        poller.addListener(botpose_wpiblue, EnumSet.of(NetworkTableEvent.Kind.kValueAll));
+
+        worker          = new Thread(this::runWorker, name + "-vision");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the snapshot of the most recent limelight frame. Safe to call from any thread.
+     *
+     * @return the latest frame, never null
+     */
+    public VisionFrame getLatestFrame() {
+        return latestFrame.get();
+    }
+
+    /**
+     * Get the position of the robot from every camera frame processed since the last call, in the
+     * order the frames were received. Frames that did not produce a usable position are omitted.
+     * <p>
+     * Must only be called from a single thread (the robot loop).
+     *
+     * @return the new position info, possibly empty
+     */
+    public List<VisionPositionInfo> drainNewPositionInfo() {
+        if (newPositionInfo.isEmpty()) {
+            return List.of();
+        }
+        List<VisionPositionInfo> result = new ArrayList<>();
+        double                   now    = Timer.getFPGATimestamp();
+        for (VisionPositionInfo info = newPositionInfo.poll(); info != null; info = newPositionInfo.poll()) {
+            metrics.recordConsumed(now - info.timestampSeconds());
+            result.add(info);
+        }
+        return result;
+    }
+
+    /**
+     * Tell the camera which pipeline it has been switched to. Frames are marked invalid, and produce
+     * no position info, until the limelight reports that pipeline and the warm-up has passed.
+     *
+     * @param pipelineIndex the pipeline index
+     * @param switchTime the FPGA time of the switch
+     * @param validAfter frames captured before this FPGA time are part of the warm-up
+     */
+    public void expectPipeline(int pipelineIndex, double switchTime, double validAfter) {
+        expectation = new PipelineExpectation(pipelineIndex, switchTime, validAfter);
+    }
+
+    /**
+     * @return the time from the most recent pipeline switch to the arrival of the first valid frame,
+     * in seconds, or NaN if there has not been a valid frame since the switch
+     */
+    public double getLastSwitchDelaySeconds() {
+        return lastSwitchDelaySec;
+    }
+
+    /**
+     * @return the number of times the worker has rebuilt the latest frame
+     */
+    public long getProcessedFrameCount() {
+        return processedFrameCount;
+    }
+
+    /**
+     * Say whether the detail only found in the limelight json (tag poses in camera space, detector
+     * results) is wanted. Without it the json is neither copied to this camera nor parsed, and the
+     * visible tags are read from rawfiducials, with their position worked out from the tag angles and
+     * distance.
+     * Takes effect from the next frame. Safe to call from any thread.
+     *
+     * @param wanted true while the json detail is used
+     */
+    public void setJsonWanted(boolean wanted) {
+        jsonWanted = wanted;
+    }
+
+    /**
+     * @return the ingestion health metrics of the camera
+     */
+    public VisionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of position infos dropped because the robot loop did not keep up
+     */
+    public long getDroppedPositionInfoCount() {
+        return newPositionInfo.getDroppedCount();
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WPIUtilJNI.waitForObjectTimeout(poller.getHandle(), WORKER_WAIT_SEC);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // the events only wake us up, the data is read from the subscriber queues
+            poller.readQueue();
+
+            try {
+                processFrames();
+            }
+            catch (RuntimeException e) {
+                // never let bad data kill the worker
+                DriverStation.reportError("Error processing " + name + " frame: " + e, e.getStackTrace());
+            }
+        }
+    }
+
+    /**
+     * Drain the NetworkTables queues of everything the limelight published since the last call.
+     * Each botpose in the queue is turned into position info (in the order received) for the pose
+     * estimator, and the snapshot for the rest of the API is rebuilt once from the newest values.
+     * A botpose the limelight published again, e.g. when it reconnects, is dropped, so that each
+     * frame reaches the pose estimator once.
+     * <p>
+     * Worker thread only.
+     */
+    private void processFrames() {
+        TimestampedDoubleArray[] botPoses       = botpose_wpiblue.readQueue();
+        int                      heartbeats     = hb.readQueue().length;
+
+        if (botPoses.length == 0 && heartbeats == 0) {
+            return;
+        }
+        metrics.recordHeartbeats(heartbeats);
+        metrics.recordBotPoses(botPoses.length);
+
+        VisionFrame              previousFrame  = latestFrame.get();
+        int                      pipelineIndex  = (int) getpipe.get();
+        VisionPositionInfo       latestPosition = null;
+        long                     frameTimestamp = hb.getLastChange();
+        double[]                 latestBotPose  = null;
+        boolean                  newBotPose     = false;
+        for (TimestampedDoubleArray botPose : botPoses) {
+            if (isRepublished(botPose)) {
+                metrics.recordDuplicate();
+                continue;
+            }
+            lastBotPose = botPose;
+            newBotPose  = true;
+
+            double[] bp = validBotPose(botPose.value);
+            latestPosition = getPositionInfo(botPose.timestamp, getPublishTimestampSeconds(botPose), bp,
+                getNumActiveTargets(bp), getTargetAvgDistance(bp));
+            if (latestPosition == null) {
+                metrics.recordNoPose();
+            }
+            else if (!isValid(pipelineIndex, latestPosition.timestampSeconds())) {
+                metrics.recordOffPipeline();
+                latestPosition = null;
+            }
+            else if (!newPositionInfo.offer(latestPosition)) {
+                metrics.recordRingDropped();
+            }
+            latestBotPose  = bp;
+            frameTimestamp = Math.max(frameTimestamp, botPose.timestamp);
+        }
+        if (!newBotPose) {
+            latestBotPose  = validBotPose(botpose_wpiblue.get());
+            latestPosition = previousFrame.getPositionInfo();
+        }
+
+        latestFrame.set(readFrame(frameTimestamp, pipelineIndex, latestBotPose, latestPosition));
+        processedFrameCount = processedFrameCount + 1;
+    }
+
+    /**
+     * A new frame that sees tags always has a new pose, if only from noise and the latency, so an
+     * identical pose or publish time is the last frame again.
+     */
+    private boolean isRepublished(TimestampedDoubleArray botPose) {
+        if (lastBotPose == null) {
+            return false;
+        }
+        if (botPose.serverTime != 0 && botPose.serverTime == lastBotPose.serverTime) {
+            return true;
+        }
+        return getNumActiveTargets(validBotPose(botPose.value)) > 0 && Arrays.equals(botPose.value, lastBotPose.value);
+    }
+
+    /**
+     * Get the time at which the limelight published a value, in the FPGA timebase.
+     * <p>
+     * The robot is the NetworkTables server, and the limelight stamps each value in server time when
+     * it publishes, so the server time excludes the network transport delay and the time the value
+     * sat in the queue before being read. Server time is the wpilib time base of this process, which
+     * is offset from the FPGA time used by the pose estimator.
+     *
+     * @param value the value read from NetworkTables
+     * @return the publish time in FPGA seconds, never later than now
+     */
+    private static double getPublishTimestampSeconds(TimestampedDoubleArray value) {
+        return toFpgaSeconds(value.serverTime != 0 ? value.serverTime : value.timestamp);
+    }
+
+    /**
+     * Convert a NetworkTables time into the FPGA timebase
+     *
+     * @param publishMicros the NetworkTables time
+     * @return the FPGA time, never later than now
+     */
+    private static double toFpgaSeconds(long publishMicros) {
+        long   nowMicros     = WPIUtilJNI.now();
+        double nowFpga       = Timer.getFPGATimestamp();
+
+        // guard against clock sync error putting the value in the future
+        return nowFpga - Math.max(0, nowMicros - publishMicros) / 1e6;
+    }
+
+    /**
+     * Check whether a frame is valid for the scheduled pipeline
+     *
+     * @param pipelineIndex the pipeline the limelight reports it is running
+     * @param captureTime the FPGA time the frame was captured
+     * @return true if the frame is valid, always true if pipelines are not scheduled
+     */
+    private boolean isValid(int pipelineIndex, double captureTime) {
+        PipelineExpectation expected = expectation;
+        return expected == null || (pipelineIndex == expected.index() && captureTime >= expected.validAfter());
+    }
+
+    /**
+     * Read the remaining limelight outputs and package them up, with the botpose, into an immutable
+     * frame.
+     *
+     * @param frameTimestamp the NetworkTables timestamp identifying the frame
+     * @param pipelineIndex the pipeline the limelight reports it is running
+     * @param botPose the newest valid botpose, or null
+     * @param positionInfo the position info computed from the botpose, or null
+     * @return the new frame
+     */
+    private VisionFrame readFrame(long frameTimestamp, int pipelineIndex, double[] botPose,
+        VisionPositionInfo positionInfo) {
+        AprilTagInfo[]      tags        = getVisibleTagInfo();
+        DetectorResult[]    detections  = getDetections();
+
+        double              latency     = Math.max(0, tl.get()) + Math.max(0, cl.get());
+        double              captureTime = toFpgaSeconds(frameTimestamp) - latency / 1000;
+        boolean             valid       = isValid(pipelineIndex, captureTime);
+
+        // measure the delay from a pipeline switch to the first valid frame
+        PipelineExpectation expected    = expectation;
+        if (valid && expected != null && expected != measuredExpectation) {
+            lastSwitchDelaySec  = Timer.getFPGATimestamp() - expected.switchTime();
+            measuredExpectation = expected;
+        }
+
+        return new VisionFrame(frameTimestamp, captureTime, pipelineIndex, valid, botPose, getNumActiveTargets(botPose),
+            getTargetAvgDistance(botPose), (int) tid.get(), tx.get(), ty.get(), ta.get(), tl.get(), tags, detections,
+            positionInfo);
+    }
+
+    /**
+     * Parse limelight's json blob in order to obtain information on multiple targets when they are
+     * in view, since limelight only gives easy access to the closest/largest one. Not using JSON
+     * parsers libs due to up to 2.5ms parsing time.
+     * <p>
+     * When the json is not wanted, or has not arrived since it was subscribed, the tags are read
+     * from rawfiducials instead.
+     *
+     * @return An array of AprilTagInfo objects, each representing a visible target.
+     * @see LimelightJsonParser
+     */
+    private AprilTagInfo[] getVisibleTagInfo() {
+        updateJsonSubscription();
+        String blob = json == null ? "" : json.get();
+        if (blob.isEmpty()) {
+            // clear the detector results
+            jsonParser.parse(null);
+            return getRawFiducialTagInfo();
+        }
+
+        long           start  = System.nanoTime();
+        int            count  = jsonParser.parse(blob);
+        metrics.recordJsonParse(blob.length(), System.nanoTime() - start);
+
+        AprilTagInfo[] tagRet = new AprilTagInfo[count];
+        for (int i = 0; i < count; i++) {
+            tagRet[i] = new AprilTagInfo(jsonParser.getTagId(i), jsonParser.getTx(i), jsonParser.getTagXTranslation(i),
+                jsonParser.getTagYTranslation(i), jsonParser.getTagDistance(i));
+        }
+        return tagRet;
+    }
+
+    /**
+     * Open the json subscription when the json is wanted and close it when it is not, so that the
+     * blob is only copied into this process's subscriber queue while it is used. The limelight
+     * publishes it to the server either way. Worker thread only.
+     */
+    private void updateJsonSubscription() {
+        boolean wanted = jsonWanted;
+        if (wanted && json == null) {
+            json = table.getStringTopic("json").subscribe("");
+        }
+        else if (!wanted && json != null) {
+            json.close();
+            json = null;
+        }
+    }
+
+    /**
+     * Read the visible tags from the limelight rawfiducials array. The tag position in the camera
+     * frame is worked out from its angles and distance, assuming the camera is mounted as
+     * configured, so it is less accurate than the tag pose in the json.
+     *
+     * @return An array of AprilTagInfo objects, each representing a visible target.
+     */
+    private AprilTagInfo[] getRawFiducialTagInfo() {
+        double[]       raw    = rawfiducials.get();
+        int            count  = raw.length / RAWFIDUCIAL_SIZE;
+        AprilTagInfo[] tagRet = new AprilTagInfo[count];
+        for (int i = 0; i < count; i++) {
+            int    base      = i * RAWFIDUCIAL_SIZE;
+            double tx        = raw[base + RAWFIDUCIAL_INDEX_TX];
+            // tync is up positive, from the camera axis
+            double elevation = Math.toRadians(camera.pitchDeg + raw[base + RAWFIDUCIAL_INDEX_TY]);
+            double distance  = raw[base + RAWFIDUCIAL_INDEX_DIST] * Math.cos(elevation);
+            // limelight tx is clockwise positive, so a positive tx is to the right
+            double forward   = distance * Math.cos(Math.toRadians(tx));
+            double right     = distance * Math.sin(Math.toRadians(tx));
+            tagRet[i] = new AprilTagInfo((int) raw[base + RAWFIDUCIAL_INDEX_ID], tx, forward, right, distance);
+        }
+        metrics.recordRawFiducials();
+        return tagRet;
+    }
+
+    /**
+     * Get the detector results decoded by the last call to {@link #getVisibleTagInfo()}
+     *
+     * @return the detector results, empty unless the detector pipeline is running and the json is
+     * wanted
+     */
+    private DetectorResult[] getDetections() {
+        int              count      = jsonParser.getDetectionCount();
+        DetectorResult[] detections = new DetectorResult[count];
+        for (int i = 0; i < count; i++) {
+            detections[i] = new DetectorResult(jsonParser.getDetectionClassId(i), jsonParser.getDetectionConfidence(i),
+                jsonParser.getDetectionTx(i), jsonParser.getDetectionTy(i), jsonParser.getDetectionTa(i));
+        }
+        return detections;
+    }
+
+    /**
+     * Gets the average target distance
+     *
+     * @return Average distance to target in meters. If no value, returns Double.MAX_VALUE.
+     */
+    private static double getTargetAvgDistance(double[] botPose) {
+        if (botPose == null || botPose[BOTPOSE_INDEX_AVGDIST] == Double.MIN_VALUE) {
+            return Double.MAX_VALUE;
+        }
+
+        return botPose[BOTPOSE_INDEX_AVGDIST];
+    }
+
+    private static int getNumActiveTargets(double[] botPose) {
+        if (botPose == null || botPose[BOTPOSE_INDEX_TAGCOUNT] == Double.MIN_VALUE) {
+            return 0;
+        }
+
+        return (int) botPose[BOTPOSE_INDEX_TAGCOUNT];
+    }
+
+    /**
+     * Check the botpose array received from the limelight
+     *
+     * @param botpose the raw array
+     * @return the array, or null if the limelight did not report a pose
+     */
+    private static double[] validBotPose(double[] botpose) {
+        if (botpose == null || botpose.length < 11 || botpose[0] == Double.MIN_VALUE) {
+            return null;
+        }
+
+        return botpose;
+    }
+
+    /**
+     * Convert the botpose (the pose of the camera on the field) into the pose of the robot, using the
+     * mounting location of the camera.
+     */
+    private Pose2d toRobotPose(double[] inData) {
+        Translation2d tran2d = new Translation2d(inData[BOTPOSE_INDEX_TX], inData[BOTPOSE_INDEX_TY]);
+        Rotation2d    r2d    = Rotation2d.fromDegrees(inData[BOTPOSE_INDEX_Y]);
+        return new Pose2d(tran2d, r2d).transformBy(cameraToRobot);
+    }
+
+    /**
+     * Get the position of the robot as computed by the Vision Subsystem. Includes latency data.
+     *
+     * If no valid position can be returned (due to bad or erratic data, blocked view, etc.),
+     * returns null
+     *
+     * @param frameId the id of the frame the data came from
+     * @param publishTimestampSeconds the FPGA time the botpose was published
+     * @return position info or null
+     * @since 2024-02-10
+     */
+    private VisionPositionInfo getPositionInfo(long frameId, double publishTimestampSeconds, double[] botPose,
+        int numTargets, double avgTargetDistance) {
+        // If No Pose, No Targets Visible, or Bot is floating in mid air, return null
+        if (botPose == null || numTargets < 1 || botPose[BOTPOSE_INDEX_TZ] > 1) {
+            return null;
+        }
+
+        // botpose latency is the total of the capture (cl) and pipeline (tl) latency for this frame
+        double         latency        = botPose[BOTPOSE_INDEX_LATENCY];
+        double         captureTime    = publishTimestampSeconds - latency / 1000;
+        Pose2d         pose           = toRobotPose(botPose);
+
+        PoseConfidence poseConfidence = PoseConfidence.NONE;
+
+        if (numTargets == 1) {
+            if (avgTargetDistance <= 2) {
+                poseConfidence = PoseConfidence.HIGH;
+            }
+            else if (avgTargetDistance <= 2.4) {
+                poseConfidence = PoseConfidence.MEDIUM;
+            }
+            else if (avgTargetDistance <= 2.8) {
+                poseConfidence = PoseConfidence.LOW;
+            }
+        }
+        else { // numTargets > 1
+            if (avgTargetDistance <= 5) {
+                poseConfidence = PoseConfidence.HIGH;
+            }
+            else if (avgTargetDistance <= 6) {
+                poseConfidence = PoseConfidence.MEDIUM;
+            }
+            else if (avgTargetDistance <= 7) {
+                poseConfidence = PoseConfidence.LOW;
+            }
+        }
+
+        return new VisionPositionInfo(camera, pose, latency, captureTime, poseConfidence, frameId, numTargets,
+            avgTargetDistance);
+    }
+
+    @Override
+    public String toString() {
+        return "LimelightCamera " + name;
+    }
+}
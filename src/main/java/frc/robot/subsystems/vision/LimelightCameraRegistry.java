@@ -0,0 +1,115 @@
+package frc.robot.subsystems.vision;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * The set of limelights used to localize the robot. Each camera is read and processed independently
+ * on its own worker thread, and the registry merges the position info from all of them for the pose
+ * estimator.
+ *
+ * @see LimelightCamera
+ */
+public class LimelightCameraRegistry {
+
+    private final LimelightCamera[] cameras;
+
+    /**
+     * Start reading every configured camera.
+     *
+     * @param configs the camera configurations, typically {@link Camera#ALL}
+     */
+    public LimelightCameraRegistry(Camera... configs) {
+        this(NetworkTableInstance.getDefault(), configs);
+    }
+
+    /**
+     * Start reading every configured camera from a NetworkTables instance.
+     *
+     * @param inst the NetworkTables instance
+     * @param configs the camera configurations
+     */
+    public LimelightCameraRegistry(NetworkTableInstance inst, Camera... configs) {
+        cameras = new LimelightCamera[configs.length];
+        for (int i = 0; i < configs.length; i++) {
+            cameras[i] = new LimelightCamera(inst, configs[i]);
+        }
+    }
+
+    /**
+     * Get the camera for a configuration
+     *
+     * @param config the camera configuration
+     * @return the camera
+     * @throws IllegalArgumentException if the camera was not registered
+     */
+    public LimelightCamera get(Camera config) {
+        for (LimelightCamera camera : cameras) {
+            if (camera.getCamera() == config) {
+                return camera;
+            }
+        }
+        throw new IllegalArgumentException("Camera not registered: " + config);
+    }
+
+    public int size() {
+        return cameras.length;
+    }
+
+    /**
+     * @param i the index of the camera, 0 to size() - 1
+     * @return the camera
+     */
+    public LimelightCamera get(int i) {
+        return cameras[i];
+    }
+
+    /**
+     * Get the position of the robot from every frame of every camera processed since the last call,
+     * ordered by capture time so the estimator sees the measurements in the order they happened.
+     * <p>
+     * Must only be called from a single thread (the robot loop).
+     *
+     * @return the new position info, possibly empty
+     */
+    public List<VisionPositionInfo> drainNewPositionInfo() {
+        if (cameras.length == 1) {
+            return cameras[0].drainNewPositionInfo();
+        }
+
+        List<VisionPositionInfo> result = null;
+        for (LimelightCamera camera : cameras) {
+            List<VisionPositionInfo> infos = camera.drainNewPositionInfo();
+            if (infos.isEmpty()) {
+                continue;
+            }
+            if (result == null) {
+                result = new ArrayList<>(infos);
+            }
+            else {
+                result.addAll(infos);
+            }
+        }
+        if (result == null) {
+            return List.of();
+        }
+        result.sort(Comparator.comparingDouble(VisionPositionInfo::timestampSeconds));
+        return result;
+    }
+
+    /**
+     * Publish the ingestion health metrics of every camera, at their own low rate. Robot loop only.
+     *
+     * @param now the current FPGA time
+     * @see VisionMetrics
+     */
+    public void publishMetrics(double now) {
+        for (LimelightCamera camera : cameras) {
+            camera.getMetrics().publish(now);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * Single pass, allocation free scanner for the limelight json blob. Only the fiducial (AprilTag) and
+ * detector (neural network) results are decoded, and they are written into preallocated primitive
+ * arrays that are reused on every call to {@link #parse(CharSequence)}.
+ * <p>
+ * This is not a general purpose json parser. It understands just enough of the grammar (strings,
+ * numbers, nesting) to walk the limelight output and pick out the fields we care about. Unknown keys
+ * and values are skipped without being materialized.
+ * <p>
+ * Instances are not thread safe. Each consumer should own its own parser.
+ */
+public class LimelightJsonParser {
+
+    /** The maximum number of fiducials that will be decoded from a single blob. Extras are ignored. */
+    public static final int MAX_TAGS              = 16;
+
+    /** The number of elements in the t6t_rs array (x, y, z, roll, pitch, yaw) */
+    public static final int TARGET_POSE_SIZE      = 6;
+
+    /** The maximum number of detector results that will be decoded from a single blob */
+    public static final int MAX_DETECTIONS        = 16;
+
+    private static final String KEY_FIDUCIAL      = "Fiducial";
+    private static final String KEY_DETECTOR      = "Detector";
+    private static final String KEY_CLASS_ID      = "classID";
+    private static final String KEY_CONF          = "conf";
+    private static final String KEY_FID           = "fID";
+    private static final String KEY_TX            = "tx";
+    private static final String KEY_TY            = "ty";
+    private static final String KEY_TA            = "ta";
+    private static final String KEY_T6T_RS        = "t6t_rs";
+    private static final String KEY_AMBIGUITY     = "ambiguity";
+
+    private final int[]         tagId             = new int[MAX_TAGS];
+    private final double[]      tx                = new double[MAX_TAGS];
+    private final double[]      ty                = new double[MAX_TAGS];
+    private final double[]      ta                = new double[MAX_TAGS];
+    private final double[]      ambiguity         = new double[MAX_TAGS];
+    private final double[]      targetPoseRobot   = new double[MAX_TAGS * TARGET_POSE_SIZE];
+
+    private int                 tagCount          = 0;
+
+    private final int[]         detClassId        = new int[MAX_DETECTIONS];
+    private final double[]      detConfidence     = new double[MAX_DETECTIONS];
+    private final double[]      detTx             = new double[MAX_DETECTIONS];
+    private final double[]      detTy             = new double[MAX_DETECTIONS];
+    private final double[]      detTa             = new double[MAX_DETECTIONS];
+
+    private int                 detectionCount    = 0;
+
+    /** The results array being scanned, one of the RESULTS_ constants */
+    private static final int    RESULTS_NONE      = 0;
+    private static final int    RESULTS_FIDUCIAL  = 1;
+    private static final int    RESULTS_DETECTOR  = 2;
+
+    /**
+     * The current input, copied so that the scan reads a char array rather than going through
+     * CharSequence.charAt. Grown to fit the largest blob seen, so steady state parses do not allocate.
+     */
+    private char[]              in                = new char[4096];
+    /** Scan position within the current input. Kept as a field so helpers need not return tuples. */
+    private int                 pos;
+    private int                 len;
+
+    /** Powers of ten used to assemble decimals without going through Double.parseDouble */
+    private static final double[] POW10           = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Decode the fiducial and detector results from the limelight json blob. Any results from a
+     * previous call are discarded.
+     *
+     * @param json the json blob, may be null or empty
+     * @return the number of fiducials decoded
+     */
+    public int parse(CharSequence json) {
+        tagCount       = 0;
+        detectionCount = 0;
+        if (json == null) {
+            return 0;
+        }
+
+        pos = 0;
+        len = json.length();
+        copyInput(json);
+
+        try {
+            scan();
+        }
+        catch (IndexOutOfBoundsException e) {
+            // Truncated or malformed blob. Keep whatever complete tags were decoded.
+        }
+
+        return tagCount;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public int getTagId(int i) {
+        return tagId[i];
+    }
+
+    /** Horizontal angle to the tag in degrees, limelight convention (clockwise positive) */
+    public double getTx(int i) {
+        return tx[i];
+    }
+
+    /** Vertical angle to the tag in degrees */
+    public double getTy(int i) {
+        return ty[i];
+    }
+
+    /** Tag area as a percentage of the image */
+    public double getTa(int i) {
+        return ta[i];
+    }
+
+    /** Pose ambiguity of the tag, or NaN if the limelight did not report one */
+    public double getAmbiguity(int i) {
+        return ambiguity[i];
+    }
+
+    /**
+     * Get an element of the t6t_rs (target pose in robot space) array for a tag.
+     *
+     * @param i the tag index
+     * @param element the element index 0..5 (x, y, z, roll, pitch, yaw)
+     * @return the value, or NaN if not reported
+     */
+    public double getTargetPoseRobotSpace(int i, int element) {
+        return targetPoseRobot[i * TARGET_POSE_SIZE + element];
+    }
+
+    /**
+     * Limelight reports x as left/right. See HughVisionSubsystem for the axis mapping.
+     */
+    public double getTagXTranslation(int i) {
+        return targetPoseRobot[i * TARGET_POSE_SIZE + 2];
+    }
+
+    public double getTagYTranslation(int i) {
+        return targetPoseRobot[i * TARGET_POSE_SIZE];
+    }
+
+    /** Straight line (floor plane) distance to the tag in metres */
+    public double getTagDistance(int i) {
+        return Math.hypot(getTagXTranslation(i), getTagYTranslation(i));
+    }
+
+    /**
+     * @return the number of detector results decoded in the last parse
+     */
+    public int getDetectionCount() {
+        return detectionCount;
+    }
+
+    /** The class of a detector result, the line number (from 0) in the model's labelmap.txt */
+    public int getDetectionClassId(int i) {
+        return detClassId[i];
+    }
+
+    /** The detector confidence 0..1, or NaN if not reported */
+    public double getDetectionConfidence(int i) {
+        return detConfidence[i];
+    }
+
+    /** Horizontal angle to the detection in degrees, limelight convention (clockwise positive) */
+    public double getDetectionTx(int i) {
+        return detTx[i];
+    }
+
+    /** Vertical angle to the detection in degrees */
+    public double getDetectionTy(int i) {
+        return detTy[i];
+    }
+
+    /** Detection bounding box area as a percentage of the image */
+    public double getDetectionTa(int i) {
+        return detTa[i];
+    }
+
+    /**
+     * Check if a tag id was decoded in the last parse.
+     *
+     * @param id the tag id
+     * @return true if the tag was seen
+     */
+    public boolean containsTag(int id) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tagId[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scan() {
+        int depth        = 0;
+        // depth of the results array once it is entered; result objects live one level deeper
+        int resultsDepth = -1;
+        int results      = RESULTS_NONE;
+
+        while (pos < len) {
+            char c = in[pos];
+            switch (c) {
+            case '{':
+            case '[':
+                depth++;
+                pos++;
+                if (c == '{' && resultsDepth >= 0 && depth == resultsDepth + 1) {
+                    startResult(results);
+                }
+                break;
+            case '}':
+            case ']':
+                if (c == '}' && resultsDepth >= 0 && depth == resultsDepth + 1) {
+                    endResult(results);
+                }
+                depth--;
+                pos++;
+                if (depth < resultsDepth) {
+                    resultsDepth = -1;
+                    results      = RESULTS_NONE;
+                }
+                break;
+            case '"': {
+                int keyStart = pos + 1;
+                skipString();
+                int keyEnd = pos - 1;
+                skipWhitespace();
+                if (pos < len && in[pos] == ':') {
+                    pos++;
+                    skipWhitespace();
+                    if (resultsDepth >= 0 && depth == resultsDepth + 1) {
+                        if (results == RESULTS_FIDUCIAL) {
+                            readTagField(keyStart, keyEnd);
+                        }
+                        else {
+                            readDetectionField(keyStart, keyEnd);
+                        }
+                    }
+                    else if (resultsDepth < 0 && pos < len && in[pos] == '[') {
+                        if (regionEquals(keyStart, keyEnd, KEY_FIDUCIAL)) {
+                            results = RESULTS_FIDUCIAL;
+                        }
+                        else if (regionEquals(keyStart, keyEnd, KEY_DETECTOR)) {
+                            results = RESULTS_DETECTOR;
+                        }
+                        if (results != RESULTS_NONE) {
+                            pos++;
+                            depth++;
+                            resultsDepth = depth;
+                        }
+                    }
+                }
+                break;
+            }
+            default:
+                skipPlain();
+            }
+        }
+    }
+
+    private void startResult(int results) {
+        if (results == RESULTS_FIDUCIAL) {
+            startTag();
+        }
+        else {
+            startDetection();
+        }
+    }
+
+    private void endResult(int results) {
+        if (results == RESULTS_FIDUCIAL) {
+            endTag();
+        }
+        else {
+            endDetection();
+        }
+    }
+
+    private void startTag() {
+        if (tagCount >= MAX_TAGS) {
+            return;
+        }
+        tagId[tagCount]     = -1;
+        tx[tagCount]        = Double.NaN;
+        ty[tagCount]        = Double.NaN;
+        ta[tagCount]        = Double.NaN;
+        ambiguity[tagCount] = Double.NaN;
+        int base = tagCount * TARGET_POSE_SIZE;
+        for (int i = 0; i < TARGET_POSE_SIZE; i++) {
+            targetPoseRobot[base + i] = Double.NaN;
+        }
+    }
+
+    private void endTag() {
+        // only keep tags that actually identified themselves
+        if (tagCount < MAX_TAGS && tagId[tagCount] >= 0) {
+            tagCount++;
+        }
+    }
+
+    private void startDetection() {
+        if (detectionCount >= MAX_DETECTIONS) {
+            return;
+        }
+        detClassId[detectionCount]    = -1;
+        detConfidence[detectionCount] = Double.NaN;
+        detTx[detectionCount]         = Double.NaN;
+        detTy[detectionCount]         = Double.NaN;
+        detTa[detectionCount]         = Double.NaN;
+    }
+
+    private void endDetection() {
+        // only keep detections with a class and a direction
+        if (detectionCount < MAX_DETECTIONS && detClassId[detectionCount] >= 0
+            && !Double.isNaN(detTx[detectionCount]) && !Double.isNaN(detTy[detectionCount])) {
+            detectionCount++;
+        }
+    }
+
+    /**
+     * Read the value for a key inside a fiducial object. Values for unknown keys are left for the
+     * main scan loop to skip over.
+     */
+    private void readTagField(int keyStart, int keyEnd) {
+        if (tagCount >= MAX_TAGS) {
+            return;
+        }
+
+        if (regionEquals(keyStart, keyEnd, KEY_FID)) {
+            double id = readNumber();
+            tagId[tagCount] = Double.isNaN(id) ? -1 : (int) id;
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TX)) {
+            tx[tagCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TY)) {
+            ty[tagCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TA)) {
+            ta[tagCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_AMBIGUITY)) {
+            ambiguity[tagCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_T6T_RS)) {
+            readArray(targetPoseRobot, tagCount * TARGET_POSE_SIZE, TARGET_POSE_SIZE);
+        }
+    }
+
+    /**
+     * Read the value for a key inside a detector object.
+     */
+    private void readDetectionField(int keyStart, int keyEnd) {
+        if (detectionCount >= MAX_DETECTIONS) {
+            return;
+        }
+
+        if (regionEquals(keyStart, keyEnd, KEY_CLASS_ID)) {
+            double id = readNumber();
+            detClassId[detectionCount] = Double.isNaN(id) ? -1 : (int) id;
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_CONF)) {
+            detConfidence[detectionCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TX)) {
+            detTx[detectionCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TY)) {
+            detTy[detectionCount] = readNumber();
+        }
+        else if (regionEquals(keyStart, keyEnd, KEY_TA)) {
+            detTa[detectionCount] = readNumber();
+        }
+    }
+
+    /**
+     * Read a flat numeric array into the destination. The whole array (including any extra
+     * elements) is consumed.
+     */
+    private void readArray(double[] dest, int offset, int max) {
+        if (charAt(pos) != '[') {
+            return;
+        }
+        pos++;
+        int n = 0;
+        while (true) {
+            skipWhitespace();
+            char c = charAt(pos);
+            if (c == ']') {
+                pos++;
+                return;
+            }
+            if (c == ',') {
+                pos++;
+                continue;
+            }
+            int    start = pos;
+            double v     = readNumber();
+            if (pos == start) {
+                // not a number - skip a character so that we always make progress
+                pos++;
+            }
+            if (n < max) {
+                dest[offset + n] = v;
+            }
+            n++;
+        }
+    }
+
+    /**
+     * Read a json number at the current position without allocating.
+     */
+    private double readNumber() {
+        boolean negative = false;
+        char    c        = charAt(pos);
+        if (c == '-') {
+            negative = true;
+            pos++;
+        }
+        else if (c == '+') {
+            pos++;
+        }
+
+        long mantissa = 0;
+        int  digits   = 0;
+        int  exponent = 0;
+        // 18 digits always fit in a long. Beyond that, drop precision but keep the magnitude.
+        while (pos < len && (c = in[pos]) >= '0' && c <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            }
+            else {
+                exponent++;
+            }
+            pos++;
+        }
+        if (pos < len && in[pos] == '.') {
+            pos++;
+            while (pos < len && (c = in[pos]) >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    exponent--;
+                }
+                pos++;
+            }
+        }
+        if (pos < len && ((c = in[pos]) == 'e' || c == 'E')) {
+            pos++;
+            boolean negExp = false;
+            c = charAt(pos);
+            if (c == '-' || c == '+') {
+                negExp = c == '-';
+                pos++;
+            }
+            int exp = 0;
+            while (pos < len && (c = in[pos]) >= '0' && c <= '9') {
+                exp = exp * 10 + (c - '0');
+                pos++;
+            }
+            exponent += negExp ? -exp : exp;
+        }
+
+        if (digits == 0 && exponent == 0) {
+            // Not a number (e.g. null, true, false). Leave it for the main loop to skip.
+            return Double.NaN;
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value = -exponent < POW10.length ? value / POW10[-exponent] : value / Math.pow(10, -exponent);
+        }
+        else if (exponent > 0) {
+            value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Advance past a quoted string. On entry the position is on the opening quote, on exit it is
+     * just past the closing quote.
+     */
+    private void skipString() {
+        char[] buf = in;
+        int    p   = pos + 1;
+        while (p < len) {
+            char c = buf[p++];
+            if (c == '\\') {
+                p++;
+            }
+            else if (c == '"') {
+                break;
+            }
+        }
+        pos = p;
+    }
+
+    /**
+     * Advance past the numbers, literals, commas and colons up to the next brace, bracket or quote.
+     * Most of the blob is values that are not read, so this is the hot loop of the scan.
+     */
+    private void skipPlain() {
+        char[] buf = in;
+        int    p   = pos + 1;
+        while (p < len) {
+            char c = buf[p];
+            if (c == '{' || c == '}' || c == '[' || c == ']' || c == '"') {
+                break;
+            }
+            p++;
+        }
+        pos = p;
+    }
+
+    /**
+     * Read a character where the blob may have been truncated. The copy is longer than the blob,
+     * so the end is checked here rather than by the array.
+     */
+    private char charAt(int i) {
+        if (i >= len) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return in[i];
+    }
+
+    private void copyInput(CharSequence json) {
+        if (in.length < len) {
+            in = new char[Math.max(len, in.length * 2)];
+        }
+        if (json instanceof String) {
+            ((String) json).getChars(0, len, in, 0);
+        }
+        else if (json instanceof StringBuilder) {
+            ((StringBuilder) json).getChars(0, len, in, 0);
+        }
+        else {
+            for (int i = 0; i < len; i++) {
+                in[i] = json.charAt(i);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < len) {
+            char c = in[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean regionEquals(int start, int end, String key) {
+        if (end - start != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (in[start + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * The pipelines loaded on the limelights (see the limelight directory in the project root). The
+ * index is the pipeline slot the file is uploaded to.
+ */
+public enum LimelightPipeline {
+
+    /** AllTags.vpr - AprilTag localization and targeting */
+    APRIL_TAGS(0, 1.0),
+    /** Detector.vpr - neural network note (and robot) detection, labels in labelmap.txt */
+    NOTE_DETECTOR(1, 0.5),
+    /** Driver camera, no processing */
+    VISUAL(2, 1.0);
+
+    /** The limelight pipeline slot */
+    public final int    index;
+
+    /**
+     * When pipelines are shared, how long this pipeline keeps the camera once its frames are valid
+     * before the next pipeline gets a turn.
+     */
+    public final double sliceSeconds;
+
+    LimelightPipeline(int index, double sliceSeconds) {
+        this.index        = index;
+        this.sliceSeconds = sliceSeconds;
+    }
+}
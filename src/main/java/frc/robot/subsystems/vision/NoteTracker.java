@@ -0,0 +1,392 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * Tracks the notes on the floor seen by a camera running the neural detector pipeline (Detector.vpr,
+ * labels in limelight/labelmap.txt) as field positions.
+ * <p>
+ * Each note detection is projected onto the floor using the camera mounting height and tilt, and
+ * then onto the field using the robot pose at the time the frame was captured. Detections are
+ * associated with tracks by global nearest neighbour within a chi-squared gate, and each track keeps
+ * a constant-position Kalman filter per field axis. Notes only move when they are pushed, so the
+ * process noise is small.
+ * <p>
+ * A track is confirmed once it has been seen in {@link #CONFIRM_HITS} frames. It is dropped when it
+ * was in view and not seen for more than {@link #MAX_MISSES} frames running (an unconfirmed track
+ * after a single miss), or when it has not been seen for {@link #TRACK_TIMEOUT_SEC}.
+ * <p>
+ * All tracks live in preallocated primitive arrays, so an update never allocates and its cost is
+ * bounded by {@link #MAX_TRACKS} and {@link LimelightJsonParser#MAX_DETECTIONS}.
+ * <p>
+ * Nothing is tracked from a camera that is not {@link Camera#calibrated}: with a guessed mounting
+ * height and tilt the projected notes would be in the wrong place.
+ * <p>
+ * Not thread safe, used from the robot loop.
+ */
+public class NoteTracker {
+
+    /** The class id of a note, its line number (from 0) in limelight/labelmap.txt */
+    public static final int     NOTE_CLASS_ID             = 0;
+
+    /** The most notes that can be tracked. Detections beyond this are ignored. */
+    public static final int     MAX_TRACKS                = 16;
+
+    private static final double MIN_CONFIDENCE            = 0.5;
+
+    /** The height of the centre of a note (on the floor) */
+    private static final double NOTE_CENTRE_HEIGHT_METRES = 0.025;
+
+    /** Detections further away than this are too inaccurate to track */
+    private static final double MAX_RANGE_METRES          = 5;
+
+    // todo: tune from logged detections
+    /** Standard deviation of the direction to a detection */
+    private static final double BEARING_STD_DEG           = 1.5;
+    /** Standard deviation of the range to a detection, as a fraction of the range */
+    private static final double RANGE_STD_FRACTION        = 0.1;
+    private static final double MIN_STD_METRES            = 0.05;
+    /** Growth of the position variance (per axis) per second, for notes pushed by robots */
+    private static final double PROCESS_VARIANCE_PER_SEC  = 0.01;
+
+    /** Chi-squared, 2 degrees of freedom, 99% */
+    private static final double GATE_CHI_SQUARED          = 9.21;
+
+    private static final int    CONFIRM_HITS              = 3;
+    private static final int    MAX_MISSES                = 3;
+    private static final double TRACK_TIMEOUT_SEC         = 10;
+
+    private final Camera        camera;
+
+    // tracks 0..trackCount-1
+    private final int[]         trackId                   = new int[MAX_TRACKS];
+    private final double[]      trackX                    = new double[MAX_TRACKS];
+    private final double[]      trackY                    = new double[MAX_TRACKS];
+    private final double[]      trackVarX                 = new double[MAX_TRACKS];
+    private final double[]      trackVarY                 = new double[MAX_TRACKS];
+    /** The time the filter state was last predicted to */
+    private final double[]      trackTime                 = new double[MAX_TRACKS];
+    private final double[]      trackLastSeen             = new double[MAX_TRACKS];
+    private final int[]         trackHits                 = new int[MAX_TRACKS];
+    private final int[]         trackMisses               = new int[MAX_TRACKS];
+    private final boolean[]     trackMatched              = new boolean[MAX_TRACKS];
+    private int                 trackCount                = 0;
+    private int                 nextTrackId               = 1;
+
+    /** The camera pose of the last frame, null before the first frame */
+    private Pose2d              lastCameraPose            = null;
+
+    // detections in the current frame, as field positions
+    private final double[]      detX                      = new double[LimelightJsonParser.MAX_DETECTIONS];
+    private final double[]      detY                      = new double[LimelightJsonParser.MAX_DETECTIONS];
+    private final double[]      detVarX                   = new double[LimelightJsonParser.MAX_DETECTIONS];
+    private final double[]      detVarY                   = new double[LimelightJsonParser.MAX_DETECTIONS];
+    private final boolean[]     detMatched                = new boolean[LimelightJsonParser.MAX_DETECTIONS];
+
+    /**
+     * @param camera the camera the detections come from
+     */
+    public NoteTracker(Camera camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Update the tracks with a frame from the detector pipeline.
+     *
+     * @param frame the frame, which must be from the detector pipeline
+     * @param robotPose the robot pose when the frame was captured
+     */
+    public void update(VisionFrame frame, Pose2d robotPose) {
+        if (!camera.calibrated) {
+            return;
+        }
+
+        double time       = frame.getTimestampSeconds();
+        Pose2d cameraPose = robotPose.transformBy(camera.robotToCamera);
+        int    detCount   = projectDetections(frame, cameraPose);
+
+        for (int t = 0; t < trackCount; t++) {
+            predict(t, time);
+            trackMatched[t] = false;
+        }
+
+        associate(detCount);
+
+        for (int t = 0; t < trackCount; t++) {
+            if (trackMatched[t]) {
+                trackLastSeen[t] = time;
+                trackHits[t]++;
+                trackMisses[t] = 0;
+            }
+            else if (isInView(trackX[t], trackY[t], cameraPose)) {
+                trackMisses[t]++;
+            }
+        }
+
+        for (int d = 0; d < detCount && trackCount < MAX_TRACKS; d++) {
+            if (!detMatched[d]) {
+                addTrack(d, time);
+            }
+        }
+
+        removeLostTracks(time);
+
+        lastCameraPose = cameraPose;
+    }
+
+    /**
+     * Forget every track
+     */
+    public void clear() {
+        trackCount = 0;
+    }
+
+    /**
+     * Check whether a note at a location would have been seen in the last frame
+     *
+     * @param x the field x location
+     * @param y the field y location
+     * @return true if the location was in the camera's field of view and range
+     */
+    public boolean isInView(double x, double y) {
+        return lastCameraPose != null && isInView(x, y, lastCameraPose);
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /**
+     * @param i the track index 0..getTrackCount()-1. Indexes change on every update.
+     * @return the track id, which is stable for the life of the track
+     */
+    public int getTrackId(int i) {
+        return trackId[i];
+    }
+
+    public double getTrackX(int i) {
+        return trackX[i];
+    }
+
+    public double getTrackY(int i) {
+        return trackY[i];
+    }
+
+    /**
+     * @param i the track index
+     * @return the position standard deviation (metres) of the track, the larger of the two axes
+     */
+    public double getTrackStdMetres(int i) {
+        return Math.sqrt(Math.max(trackVarX[i], trackVarY[i]));
+    }
+
+    /**
+     * @param i the track index
+     * @return true if the note has been seen often enough to be trusted
+     */
+    public boolean isConfirmed(int i) {
+        return trackHits[i] >= CONFIRM_HITS;
+    }
+
+    /**
+     * Find the confirmed note nearest to a location
+     *
+     * @param location the field location
+     * @param maxDistanceMetres the furthest the note can be from the location
+     * @return the note location, or null if there is no confirmed note within the distance
+     */
+    public Translation2d getNearestNote(Translation2d location, double maxDistanceMetres) {
+        int    nearest      = -1;
+        double nearestDist2 = maxDistanceMetres * maxDistanceMetres;
+        for (int t = 0; t < trackCount; t++) {
+            double dx    = trackX[t] - location.getX();
+            double dy    = trackY[t] - location.getY();
+            double dist2 = dx * dx + dy * dy;
+            if (isConfirmed(t) && dist2 <= nearestDist2) {
+                nearest      = t;
+                nearestDist2 = dist2;
+            }
+        }
+        return nearest < 0 ? null : new Translation2d(trackX[nearest], trackY[nearest]);
+    }
+
+    /**
+     * Project the note detections in a frame onto the field
+     *
+     * @return the number of detections projected
+     */
+    private int projectDetections(VisionFrame frame, Pose2d cameraPose) {
+        double cos   = cameraPose.getRotation().getCos();
+        double sin   = cameraPose.getRotation().getSin();
+        int    count = 0;
+
+        for (int i = 0; i < frame.getDetectionCount() && count < detX.length; i++) {
+            DetectorResult det = frame.getDetection(i);
+            if (det.classId() != NOTE_CLASS_ID || !(det.confidence() >= MIN_CONFIDENCE)) {
+                continue;
+            }
+
+            // the angle below horizontal tells the distance along the floor
+            double depression = Math.toRadians(-(camera.pitchDeg + det.ty()));
+            if (depression <= 0) {
+                continue;
+            }
+            double forward = (camera.heightMetres - NOTE_CENTRE_HEIGHT_METRES) / Math.tan(depression);
+            // limelight tx is clockwise positive
+            double left    = -forward * Math.tan(Math.toRadians(det.tx()));
+            double range   = Math.hypot(forward, left);
+            if (range > MAX_RANGE_METRES) {
+                continue;
+            }
+
+            // the range is much less certain than the bearing, so the measurement variance along
+            // each field axis depends on the direction of the note
+            double rangeVar   = square(Math.max(MIN_STD_METRES, RANGE_STD_FRACTION * range));
+            double bearingVar = square(Math.max(MIN_STD_METRES, range * Math.toRadians(BEARING_STD_DEG)));
+            double rayCos     = (forward * cos - left * sin) / range;
+            double raySin     = (forward * sin + left * cos) / range;
+
+            detX[count]       = cameraPose.getX() + forward * cos - left * sin;
+            detY[count]       = cameraPose.getY() + forward * sin + left * cos;
+            detVarX[count]    = rangeVar * rayCos * rayCos + bearingVar * raySin * raySin;
+            detVarY[count]    = rangeVar * raySin * raySin + bearingVar * rayCos * rayCos;
+            detMatched[count] = false;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Grow the track variance for the time since its last update
+     */
+    private void predict(int t, double time) {
+        double dt = Math.max(0, time - trackTime[t]);
+        trackVarX[t] += PROCESS_VARIANCE_PER_SEC * dt;
+        trackVarY[t] += PROCESS_VARIANCE_PER_SEC * dt;
+        trackTime[t]  = Math.max(trackTime[t], time);
+    }
+
+    /**
+     * Pair detections with tracks, closest pair (by Mahalanobis distance) first, and apply the
+     * Kalman update for each pair.
+     */
+    private void associate(int detCount) {
+        while (true) {
+            int    bestDet   = -1;
+            int    bestTrack = -1;
+            double best      = GATE_CHI_SQUARED;
+
+            for (int d = 0; d < detCount; d++) {
+                if (detMatched[d]) {
+                    continue;
+                }
+                for (int t = 0; t < trackCount; t++) {
+                    if (trackMatched[t]) {
+                        continue;
+                    }
+                    double dx = detX[d] - trackX[t];
+                    double dy = detY[d] - trackY[t];
+                    double d2 = dx * dx / (trackVarX[t] + detVarX[d]) + dy * dy / (trackVarY[t] + detVarY[d]);
+                    if (d2 < best) {
+                        best      = d2;
+                        bestDet   = d;
+                        bestTrack = t;
+                    }
+                }
+            }
+
+            if (bestDet < 0) {
+                return;
+            }
+
+            detMatched[bestDet]     = true;
+            trackMatched[bestTrack] = true;
+
+            double kx = trackVarX[bestTrack] / (trackVarX[bestTrack] + detVarX[bestDet]);
+            double ky = trackVarY[bestTrack] / (trackVarY[bestTrack] + detVarY[bestDet]);
+            trackX[bestTrack]    += kx * (detX[bestDet] - trackX[bestTrack]);
+            trackY[bestTrack]    += ky * (detY[bestDet] - trackY[bestTrack]);
+            trackVarX[bestTrack] *= 1 - kx;
+            trackVarY[bestTrack] *= 1 - ky;
+        }
+    }
+
+    private void addTrack(int d, double time) {
+        int t = trackCount++;
+        trackId[t]       = nextTrackId++;
+        trackX[t]        = detX[d];
+        trackY[t]        = detY[d];
+        trackVarX[t]     = detVarX[d];
+        trackVarY[t]     = detVarY[d];
+        trackTime[t]     = time;
+        trackLastSeen[t] = time;
+        trackHits[t]     = 1;
+        trackMisses[t]   = 0;
+        trackMatched[t]  = true;
+    }
+
+    /**
+     * Remove lost tracks, moving the last track into each hole
+     */
+    private void removeLostTracks(double time) {
+        int t = 0;
+        while (t < trackCount) {
+            boolean lost = trackMisses[t] > MAX_MISSES
+                || (!isConfirmed(t) && trackMisses[t] > 0)
+                || time - trackLastSeen[t] > TRACK_TIMEOUT_SEC;
+            if (!lost) {
+                t++;
+                continue;
+            }
+
+            int last = --trackCount;
+            trackId[t]       = trackId[last];
+            trackX[t]        = trackX[last];
+            trackY[t]        = trackY[last];
+            trackVarX[t]     = trackVarX[last];
+            trackVarY[t]     = trackVarY[last];
+            trackTime[t]     = trackTime[last];
+            trackLastSeen[t] = trackLastSeen[last];
+            trackHits[t]     = trackHits[last];
+            trackMisses[t]   = trackMisses[last];
+            trackMatched[t]  = trackMatched[last];
+        }
+    }
+
+    /**
+     * @return true if the camera should be able to see a note at the location
+     */
+    private boolean isInView(double x, double y, Pose2d cameraPose) {
+        double dx      = x - cameraPose.getX();
+        double dy      = y - cameraPose.getY();
+        double cos     = cameraPose.getRotation().getCos();
+        double sin     = cameraPose.getRotation().getSin();
+        double forward = dx * cos + dy * sin;
+        double left    = -dx * sin + dy * cos;
+        return forward > 0
+            && Math.hypot(forward, left) <= MAX_RANGE_METRES
+            && Math.abs(Math.toDegrees(Math.atan2(left, forward))) <= camera.horizontalFovDeg / 2;
+    }
+
+    /**
+     * @return the tracks, for telemetry
+     */
+    public String tracksToString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int t = 0; t < trackCount; t++) {
+            if (t > 0) {
+                sb.append(",");
+            }
+            sb.append(String.format("[%d%s:%.2f,%.2f]", trackId[t], isConfirmed(t) ? "" : "?", trackX[t], trackY[t]));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
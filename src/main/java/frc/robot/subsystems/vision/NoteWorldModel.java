@@ -0,0 +1,334 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.Constants.Swerve.Chassis.MAX_TRANSLATION_ACCELERATION_MPS2;
+import static frc.robot.Constants.Swerve.Chassis.MAX_TRANSLATION_SPEED_MPS;
+
+import java.util.Arrays;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.BotTarget;
+
+/**
+ * What the robot knows about the notes on the field: where each one is, and whether it is still
+ * there to be picked up.
+ * <p>
+ * The model starts with the notes at their placed locations ({@link BotTarget} notes). Notes
+ * confirmed by the {@link NoteTracker} move the matching note to its tracked location, or add a
+ * note that was not placed (e.g. one dropped by a robot). A note that should be in view but has not
+ * been seen for {@link #MISSES_TO_REMOVE} detector frames is gone, as is a note that was picked up.
+ * <p>
+ * Available notes are kept in a fixed grid of {@link #CELL_METRES} cells over the field, so the
+ * nearest note query only looks at the cells around the robot. Everything is held in preallocated
+ * arrays, and queries do not allocate except for the returned location.
+ * <p>
+ * Not thread safe, used from the robot loop.
+ */
+public class NoteWorldModel {
+
+    /** The notes placed on the field at the start of the match */
+    private static final BotTarget[] PLACED_NOTES          = {
+        BotTarget.BLUE_NOTE_WOLVERINE, BotTarget.BLUE_NOTE_BARNUM, BotTarget.BLUE_NOTE_VALJEAN,
+        BotTarget.RED_NOTE_WOLVERINE, BotTarget.RED_NOTE_BARNUM, BotTarget.RED_NOTE_VALJEAN,
+        BotTarget.CENTRE_NOTE_1, BotTarget.CENTRE_NOTE_2, BotTarget.CENTRE_NOTE_3, BotTarget.CENTRE_NOTE_4,
+        BotTarget.CENTRE_NOTE_5 };
+
+    /** The most notes the model can hold, placed and discovered */
+    public static final int          MAX_NOTES             = 32;
+
+    private static final double      CELL_METRES           = 1.0;
+
+    /** A tracked note within this distance of a known note is that note */
+    private static final double      MATCH_RADIUS_METRES   = 0.5;
+
+    /** The most a pickup location can be from the note picked up */
+    private static final double      PICKUP_RADIUS_METRES  = 0.75;
+
+    private static final int         MISSES_TO_REMOVE      = 10;
+
+    private final int                columns;
+    private final int                rows;
+
+    // notes 0..noteCount-1, placed notes first
+    private final double[]           noteX                 = new double[MAX_NOTES];
+    private final double[]           noteY                 = new double[MAX_NOTES];
+    private final boolean[]          noteAvailable         = new boolean[MAX_NOTES];
+    private final int[]              noteMisses            = new int[MAX_NOTES];
+    private int                      noteCount             = 0;
+
+    // the grid, a linked list of available notes per cell
+    private final int[]              cellHead;
+    private final int[]              nextInCell            = new int[MAX_NOTES];
+    private boolean                  gridDirty             = true;
+
+    /**
+     * @param layout the field layout, for the size of the field
+     */
+    public NoteWorldModel(AprilTagFieldLayout layout) {
+        columns  = (int) Math.ceil(layout.getFieldLength() / CELL_METRES);
+        rows     = (int) Math.ceil(layout.getFieldWidth() / CELL_METRES);
+        cellHead = new int[columns * rows];
+        reset();
+    }
+
+    /**
+     * Put every note back on its placed location, e.g. at the start of a match
+     */
+    public void reset() {
+        noteCount = 0;
+        for (BotTarget note : PLACED_NOTES) {
+            addNote(note.getLocation().getX(), note.getLocation().getY());
+        }
+        gridDirty = true;
+    }
+
+    /**
+     * Update the model from the tracker, after the tracker has been updated with a detector frame.
+     *
+     * @param tracker the note tracker
+     */
+    public void update(NoteTracker tracker) {
+        // a note that is tracked is there
+        for (int t = 0; t < tracker.getTrackCount(); t++) {
+            if (!tracker.isConfirmed(t)) {
+                continue;
+            }
+            double x    = tracker.getTrackX(t);
+            double y    = tracker.getTrackY(t);
+            int    note = findNearest(x, y, MATCH_RADIUS_METRES, false);
+            if (note < 0) {
+                if (noteCount < MAX_NOTES) {
+                    addNote(x, y);
+                    gridDirty = true;
+                }
+                continue;
+            }
+            if (!noteAvailable[note] || cellOf(noteX[note], noteY[note]) != cellOf(x, y)) {
+                gridDirty = true;
+            }
+            noteX[note]         = x;
+            noteY[note]         = y;
+            noteAvailable[note] = true;
+            noteMisses[note]    = 0;
+        }
+
+        // a note that should be seen and is not tracked is gone
+        for (int note = 0; note < noteCount; note++) {
+            if (!noteAvailable[note] || isTracked(tracker, note)) {
+                continue;
+            }
+            if (tracker.isInView(noteX[note], noteY[note]) && ++noteMisses[note] >= MISSES_TO_REMOVE) {
+                noteAvailable[note] = false;
+                gridDirty           = true;
+            }
+        }
+    }
+
+    /**
+     * Record that a note was picked up
+     *
+     * @param location where the note was picked up, e.g. the intake location
+     * @return true if a note was found and removed
+     */
+    public boolean notePickedUp(Translation2d location) {
+        int note = findNearest(location.getX(), location.getY(), PICKUP_RADIUS_METRES, true);
+        if (note < 0) {
+            return false;
+        }
+        noteAvailable[note] = false;
+        gridDirty           = true;
+        return true;
+    }
+
+    /**
+     * Find an available note near where it is expected
+     *
+     * @param expectedLocation the expected location, e.g. a placed note location
+     * @return the note location, or null if there is no available note near the expected location
+     */
+    public Translation2d getNote(Translation2d expectedLocation) {
+        return toTranslation(findNearest(expectedLocation.getX(), expectedLocation.getY(), MATCH_RADIUS_METRES, true));
+    }
+
+    /**
+     * Find a note to go for: the note near where it is expected if it is still there, otherwise the
+     * nearest other note within reach.
+     *
+     * @param expectedLocation the expected location, e.g. a placed note location
+     * @param robotPose the robot pose
+     * @param maxSeconds the time allowed to drive to another note
+     * @return the note location, or null if there is no suitable note
+     */
+    public Translation2d findNote(Translation2d expectedLocation, Pose2d robotPose, double maxSeconds) {
+        Translation2d note = getNote(expectedLocation);
+        return note != null ? note : getNearestAvailableNote(robotPose, maxSeconds);
+    }
+
+    /**
+     * Find the nearest available note the robot can reach in a time
+     *
+     * @param robotPose the robot pose
+     * @param maxSeconds the time allowed to drive to the note
+     * @return the note location, or null if there is no available note within reach
+     */
+    public Translation2d getNearestAvailableNote(Pose2d robotPose, double maxSeconds) {
+        return toTranslation(findNearest(robotPose.getX(), robotPose.getY(), getReachMetres(maxSeconds), true));
+    }
+
+    /**
+     * @return the number of notes still available
+     */
+    public int getAvailableCount() {
+        int count = 0;
+        for (int note = 0; note < noteCount; note++) {
+            if (noteAvailable[note]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The straight line distance the robot can drive in a time from a standstill to a stop, with a
+     * trapezoidal speed profile.
+     *
+     * @param seconds the time
+     * @return the distance in metres
+     */
+    static double getReachMetres(double seconds) {
+        double v = MAX_TRANSLATION_SPEED_MPS;
+        double a = MAX_TRANSLATION_ACCELERATION_MPS2;
+        if (seconds <= 2 * v / a) {
+            // never reaches full speed
+            return a * seconds * seconds / 4;
+        }
+        return v * (seconds - v / a);
+    }
+
+    private void addNote(double x, double y) {
+        int note = noteCount++;
+        noteX[note]         = x;
+        noteY[note]         = y;
+        noteAvailable[note] = true;
+        noteMisses[note]    = 0;
+    }
+
+    private boolean isTracked(NoteTracker tracker, int note) {
+        for (int t = 0; t < tracker.getTrackCount(); t++) {
+            double dx = tracker.getTrackX(t) - noteX[note];
+            double dy = tracker.getTrackY(t) - noteY[note];
+            if (dx * dx + dy * dy <= MATCH_RADIUS_METRES * MATCH_RADIUS_METRES) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the nearest note to a location
+     *
+     * @param availableOnly true to search the available notes using the grid, false to search every
+     * note
+     * @return the note index, or -1 if there is no note within the distance
+     */
+    private int findNearest(double x, double y, double maxDistance, boolean availableOnly) {
+        int    nearest   = -1;
+        double bestDist2 = maxDistance * maxDistance;
+
+        if (!availableOnly) {
+            for (int note = 0; note < noteCount; note++) {
+                double dist2 = distance2(note, x, y);
+                if (dist2 <= bestDist2) {
+                    nearest   = note;
+                    bestDist2 = dist2;
+                }
+            }
+            return nearest;
+        }
+
+        if (gridDirty) {
+            rebuildGrid();
+        }
+
+        int col = column(x);
+        int row = row(y);
+        // search rings of cells outward. A note in ring k is at least (k - 1) cells away.
+        for (int k = 0; k < Math.max(columns, rows); k++) {
+            double ringDist = (k - 1) * CELL_METRES;
+            if (ringDist > 0 && ringDist * ringDist > bestDist2) {
+                break;
+            }
+            for (int c = col - k; c <= col + k; c++) {
+                if (c < 0 || c >= columns) {
+                    continue;
+                }
+                // the full column on the ring edges, only the top and bottom cells inside
+                int rowStep = (c == col - k || c == col + k) ? 1 : Math.max(1, 2 * k);
+                for (int r = row - k; r <= row + k; r += rowStep) {
+                    if (r < 0 || r >= rows) {
+                        continue;
+                    }
+                    for (int note = cellHead[c * rows + r]; note >= 0; note = nextInCell[note]) {
+                        double dist2 = distance2(note, x, y);
+                        if (dist2 <= bestDist2) {
+                            nearest   = note;
+                            bestDist2 = dist2;
+                        }
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    private void rebuildGrid() {
+        Arrays.fill(cellHead, -1);
+        for (int note = 0; note < noteCount; note++) {
+            if (noteAvailable[note]) {
+                int cell = cellOf(noteX[note], noteY[note]);
+                nextInCell[note] = cellHead[cell];
+                cellHead[cell]   = note;
+            }
+        }
+        gridDirty = false;
+    }
+
+    private int cellOf(double x, double y) {
+        return column(x) * rows + row(y);
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) (x / CELL_METRES)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) (y / CELL_METRES)));
+    }
+
+    private double distance2(int note, double x, double y) {
+        double dx = noteX[note] - x;
+        double dy = noteY[note] - y;
+        return dx * dx + dy * dy;
+    }
+
+    private Translation2d toTranslation(int note) {
+        return note < 0 ? null : new Translation2d(noteX[note], noteY[note]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int note = 0; note < noteCount; note++) {
+            if (noteAvailable[note]) {
+                if (sb.length() > 1) {
+                    sb.append(",");
+                }
+                sb.append(String.format("[%.2f,%.2f]", noteX[note], noteY[note]));
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,165 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.Constants.VisionConstants.VISION_SWITCH_TIME_SEC;
+
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Shares one limelight between pipelines based on what the running commands need.
+ * <p>
+ * Commands {@link #need(Object, LimelightPipeline) need} a pipeline while they are using its
+ * output, or {@link #prepare(Object, LimelightPipeline) prepare} one they will need soon so the
+ * switch happens before it is needed. The scheduler picks the pipelines to run from the needs,
+ * or the preparations if nothing is needed, or AprilTags (localization) if nothing is requested at
+ * all. When more than one pipeline is wanted they take turns, each keeping the camera for its
+ * slice once its frames are valid.
+ * <p>
+ * Frames are invalid until the camera reports the new pipeline and {@code VISION_SWITCH_TIME_SEC}
+ * has passed since the switch. The camera marks them and measures the delay from each switch to
+ * the first valid frame.
+ */
+public class PipelineScheduler {
+
+    /** The pipeline used when nothing is requested */
+    private static final LimelightPipeline       DEFAULT_PIPELINE = LimelightPipeline.APRIL_TAGS;
+
+    private final LimelightCamera                camera;
+    private final IntConsumer                    pipelineSetter;
+
+    private final Map<Object, LimelightPipeline> needs            = new IdentityHashMap<>();
+    private final Map<Object, LimelightPipeline> preparations     = new IdentityHashMap<>();
+
+    private LimelightPipeline                    active           = null;
+    private double                               switchTime       = 0;
+    private int                                  switchCount      = 0;
+
+    /**
+     * @param camera the camera, which validates frames against the scheduled pipeline
+     * @param pipelineSetter writes the pipeline index to the limelight
+     */
+    public PipelineScheduler(LimelightCamera camera, IntConsumer pipelineSetter) {
+        this.camera         = camera;
+        this.pipelineSetter = pipelineSetter;
+    }
+
+    /**
+     * Request a pipeline that is needed now. Replaces any earlier request by the same requester.
+     *
+     * @param requester the requester, normally the command
+     * @param pipeline the pipeline
+     */
+    public void need(Object requester, LimelightPipeline pipeline) {
+        preparations.remove(requester);
+        needs.put(requester, pipeline);
+    }
+
+    /**
+     * Request a pipeline that will be needed soon, so that it is running by the time it is needed.
+     * Preparations only get the camera when nothing is needed now. Replaces any earlier request by
+     * the same requester.
+     *
+     * @param requester the requester, normally the command
+     * @param pipeline the pipeline
+     */
+    public void prepare(Object requester, LimelightPipeline pipeline) {
+        needs.remove(requester);
+        preparations.put(requester, pipeline);
+    }
+
+    /**
+     * Withdraw any request by the requester
+     *
+     * @param requester the requester
+     */
+    public void release(Object requester) {
+        needs.remove(requester);
+        preparations.remove(requester);
+    }
+
+    /**
+     * Withdraw every preparation, e.g. those left by an auto that ended before the commands they
+     * were made for ran
+     */
+    public void releasePreparations() {
+        preparations.clear();
+    }
+
+    /**
+     * Choose the pipeline to run. Call once per loop.
+     *
+     * @param now the current FPGA time
+     */
+    public void update(double now) {
+        EnumSet<LimelightPipeline> wanted = wanted();
+
+        if (active == null || !wanted.contains(active)) {
+            switchTo(next(wanted), now);
+            return;
+        }
+
+        // take turns, counting the slice from the time the frames became valid
+        if (wanted.size() > 1 && now - switchTime - VISION_SWITCH_TIME_SEC > active.sliceSeconds) {
+            switchTo(next(wanted), now);
+        }
+    }
+
+    private EnumSet<LimelightPipeline> wanted() {
+        EnumSet<LimelightPipeline> wanted = EnumSet.noneOf(LimelightPipeline.class);
+        wanted.addAll(needs.values());
+        if (wanted.isEmpty()) {
+            wanted.addAll(preparations.values());
+        }
+        if (wanted.isEmpty()) {
+            wanted.add(DEFAULT_PIPELINE);
+        }
+        return wanted;
+    }
+
+    /**
+     * @return the wanted pipeline after the active one, in round robin order
+     */
+    private LimelightPipeline next(EnumSet<LimelightPipeline> wanted) {
+        LimelightPipeline[] pipelines = LimelightPipeline.values();
+        int                 start     = active == null ? 0 : active.ordinal() + 1;
+        for (int i = 0; i < pipelines.length; i++) {
+            LimelightPipeline candidate = pipelines[(start + i) % pipelines.length];
+            if (wanted.contains(candidate)) {
+                return candidate;
+            }
+        }
+        return DEFAULT_PIPELINE;
+    }
+
+    private void switchTo(LimelightPipeline pipeline, double now) {
+        if (pipeline == active) {
+            return;
+        }
+        active     = pipeline;
+        switchTime = now;
+        switchCount++;
+        pipelineSetter.accept(pipeline.index);
+        camera.expectPipeline(pipeline.index, now, now + VISION_SWITCH_TIME_SEC);
+    }
+
+    /**
+     * @return the pipeline the camera has been switched to
+     */
+    public LimelightPipeline getActivePipeline() {
+        return active;
+    }
+
+    /**
+     * @param pipeline the pipeline
+     * @return true if the pipeline is running and its warm-up has passed, so its frames can be used
+     */
+    public boolean isReady(LimelightPipeline pipeline) {
+        return pipeline == active && camera.getLatestFrame().isValid();
+    }
+
+    public int getSwitchCount() {
+        return switchCount;
+    }
+}
@@ -0,0 +1,32 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * Turns an ever increasing count into a rate per second, measured over windows of at least
+ * {@link #WINDOW_SEC} so that the rate does not jitter with the loop timing.
+ */
+final class RateMeter {
+
+    private static final double WINDOW_SEC       = 1.0;
+
+    private double              windowStartTime  = Double.NaN;
+    private double              windowStartCount = 0;
+    private double              rate             = 0;
+
+    /**
+     * @param count the count so far
+     * @param now the current time in seconds
+     * @return the rate per second over the last complete window
+     */
+    double update(double count, double now) {
+        if (Double.isNaN(windowStartTime)) {
+            windowStartTime  = now;
+            windowStartCount = count;
+        }
+        else if (now - windowStartTime >= WINDOW_SEC) {
+            rate             = (count - windowStartCount) / (now - windowStartTime);
+            windowStartTime  = now;
+            windowStartCount = count;
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,415 @@
+package frc.robot.subsystems.vision;
+
+import java.util.Random;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * A stand-in for a limelight, for simulation and off-robot benchmarking. It publishes the same
+ * outputs as a limelight running an AprilTag pipeline (botpose_wpiblue, tid, tx, ty, ta, tl, cl,
+ * targetpose_robotspace, rawfiducials, json and hb) to the camera's table, computed from the robot pose and the
+ * field layout, with configurable frame rate, latency and noise.
+ * <p>
+ * Frames are published from a {@link Notifier} at the configured rate. Each frame shows the robot
+ * where it was at the simulated capture time (the publish time minus the latency), so the output
+ * is delayed the same way a real camera's is. Noise is seeded, so runs are repeatable.
+ * <p>
+ * Like the real limelights, the camera is assumed to be configured at the robot origin: botpose is
+ * the pose of the camera, and targetpose_robotspace is relative to the camera.
+ */
+public class SimulatedLimelight implements AutoCloseable {
+
+    public static class Config {
+        public double              framesPerSecond;
+        public double              captureLatencyMillis;
+        public double              pipelineLatencyMillis;
+        /** Standard deviation of the botpose position error with one tag at 1 m */
+        public double              xyNoiseMetres;
+        /** Standard deviation of the botpose heading error with one tag at 1 m */
+        public double              headingNoiseDeg;
+        public double              maxRangeMetres;
+        public double              horizontalFovDeg;
+        public double              verticalFovDeg;
+        public double              cameraHeightMetres;
+        public long                randomSeed;
+
+        /** Roughly a limelight 3 running the AprilTag pipeline at 640x480 */
+        public static final Config DEFAULT = new Config();
+
+        static {
+            DEFAULT.framesPerSecond       = 30;
+            DEFAULT.captureLatencyMillis  = 12;
+            DEFAULT.pipelineLatencyMillis = 20;
+            DEFAULT.xyNoiseMetres         = 0.02;
+            DEFAULT.headingNoiseDeg       = 1;
+            DEFAULT.maxRangeMetres        = 6;
+            DEFAULT.horizontalFovDeg      = 63.3;
+            DEFAULT.verticalFovDeg        = 49.7;
+            DEFAULT.cameraHeightMetres    = 0.5;
+            DEFAULT.randomSeed            = 2024;
+        }
+    }
+
+    /** Side length of the 2024 AprilTags (the black square) */
+    private static final double                    TAG_SIZE_METRES       = 0.1651;
+
+    /** Tags viewed more obliquely than this cannot be decoded */
+    private static final double                    MAX_VIEW_ANGLE_DEG    = 70;
+
+    private final Camera                           camera;
+    private final Config                           config;
+    private final AprilTag[]                       tags;
+    private final Random                           random;
+    private final Notifier                         notifier;
+
+    /** Robot poses from the robot loop, read by the notifier thread. Guarded by itself. */
+    private final TimeInterpolatableBuffer<Pose2d> poseHistory           = TimeInterpolatableBuffer.createBuffer(1.0);
+
+    private final DoubleArrayPublisher             botpose_wpiblue;
+    private final DoubleArrayPublisher             targetpose_robotspace;
+    private final DoubleArrayPublisher             rawfiducials;
+    private final DoublePublisher                  tid;
+    private final DoublePublisher                  tx;
+    private final DoublePublisher                  ty;
+    private final DoublePublisher                  ta;
+    private final DoublePublisher                  tl;
+    private final DoublePublisher                  cl;
+    private final DoublePublisher                  hb;
+    private final StringPublisher                  json;
+    private final DoublePublisher                  getpipe;
+    private final DoubleSubscriber                 priorityid;
+    private final DoubleSubscriber                 pipeline;
+
+    // notifier thread only, preallocated per visible tag
+    private final int[]                            visibleTagIndex;
+    private final double[]                         visibleTx;
+    private final double[]                         visibleTy;
+    private final double[]                         visibleTa;
+    private final double[]                         visibleForward;
+    private final double[]                         visibleRight;
+    private final double[]                         visibleYawDeg;
+    private final StringBuilder                    jsonBuilder           = new StringBuilder(2048);
+    private long                                   heartbeat             = 0;
+
+    /**
+     * Create a simulated limelight publishing to the default NetworkTables instance.
+     *
+     * @param camera the camera to simulate
+     * @param layout the field layout
+     * @param config the camera performance
+     */
+    public SimulatedLimelight(Camera camera, AprilTagFieldLayout layout, Config config) {
+        this(NetworkTableInstance.getDefault(), camera, layout, config);
+    }
+
+    /**
+     * Create a simulated limelight publishing to a NetworkTables instance, which may be a client of a
+     * robot program running in another process.
+     *
+     * @param inst the NetworkTables instance
+     * @param camera the camera to simulate
+     * @param layout the field layout
+     * @param config the camera performance
+     */
+    public SimulatedLimelight(NetworkTableInstance inst, Camera camera, AprilTagFieldLayout layout, Config config) {
+        this.camera           = camera;
+        this.config           = config;
+        this.tags             = layout.getTags().toArray(new AprilTag[0]);
+        this.random           = new Random(config.randomSeed);
+
+        visibleTagIndex       = new int[tags.length];
+        visibleTx             = new double[tags.length];
+        visibleTy             = new double[tags.length];
+        visibleTa             = new double[tags.length];
+        visibleForward        = new double[tags.length];
+        visibleRight          = new double[tags.length];
+        visibleYawDeg         = new double[tags.length];
+
+        NetworkTable table = inst.getTable(camera.name);
+        botpose_wpiblue       = table.getDoubleArrayTopic("botpose_wpiblue").publish();
+        targetpose_robotspace = table.getDoubleArrayTopic("targetpose_robotspace").publish();
+        rawfiducials          = table.getDoubleArrayTopic("rawfiducials").publish();
+        tid                   = table.getDoubleTopic("tid").publish();
+        tx                    = table.getDoubleTopic("tx").publish();
+        ty                    = table.getDoubleTopic("ty").publish();
+        ta                    = table.getDoubleTopic("ta").publish();
+        tl                    = table.getDoubleTopic("tl").publish();
+        cl                    = table.getDoubleTopic("cl").publish();
+        hb                    = table.getDoubleTopic("hb").publish();
+        json                  = table.getStringTopic("json").publish();
+        getpipe               = table.getDoubleTopic("getpipe").publish();
+        priorityid            = table.getDoubleTopic("priorityid").subscribe(-1);
+        pipeline              = table.getDoubleTopic("pipeline").subscribe(0);
+
+        notifier              = new Notifier(this::publishFrame);
+        notifier.setName(camera.name + "-sim");
+    }
+
+    /**
+     * Start publishing frames
+     */
+    public void start() {
+        notifier.startPeriodic(1 / config.framesPerSecond);
+    }
+
+    public void stop() {
+        notifier.stop();
+    }
+
+    /**
+     * Record the robot pose. Call once per loop from the robot loop (e.g. simulationPeriodic).
+     *
+     * @param pose the (simulated) robot pose on the field
+     */
+    public void updateRobotPose(Pose2d pose) {
+        synchronized (poseHistory) {
+            poseHistory.addSample(Timer.getFPGATimestamp(), pose);
+        }
+    }
+
+    /**
+     * Compute and publish one frame. Notifier thread.
+     */
+    private void publishFrame() {
+        double latencyMillis = config.captureLatencyMillis + config.pipelineLatencyMillis;
+        Pose2d robotPose;
+        synchronized (poseHistory) {
+            robotPose = poseHistory.getSample(Timer.getFPGATimestamp() - latencyMillis / 1000).orElse(null);
+        }
+
+        // pipelines switch instantly, only the AprilTag pipeline is simulated
+        int    pipe       = (int) pipeline.get();
+        getpipe.set(pipe);
+        hb.set(++heartbeat);
+        tl.set(config.pipelineLatencyMillis);
+        cl.set(config.captureLatencyMillis);
+
+        Pose2d cameraPose = robotPose == null || pipe != LimelightPipeline.APRIL_TAGS.index ? null
+            : robotPose.transformBy(camera.robotToCamera);
+        int    count      = cameraPose == null ? 0 : findVisibleTags(cameraPose);
+
+        if (count == 0) {
+            tid.set(-1);
+            tx.set(0);
+            ty.set(0);
+            ta.set(0);
+            botpose_wpiblue.set(new double[11]);
+            targetpose_robotspace.set(new double[6]);
+            rawfiducials.set(new double[0]);
+            json.set(buildJson(0, null));
+            return;
+        }
+
+        // the primary target is the priority tag if it is visible, otherwise the largest
+        int    primary    = 0;
+        int    priority   = (int) priorityid.get();
+        for (int i = 1; i < count; i++) {
+            if (visibleTa[i] > visibleTa[primary]) {
+                primary = i;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (tags[visibleTagIndex[i]].ID == priority) {
+                primary = i;
+            }
+        }
+
+        tid.set(tags[visibleTagIndex[primary]].ID);
+        tx.set(visibleTx[primary]);
+        ty.set(visibleTy[primary]);
+        ta.set(visibleTa[primary]);
+        targetpose_robotspace.set(targetPose(primary));
+
+        double[] botPose = botPose(cameraPose, count, latencyMillis);
+        botpose_wpiblue.set(botPose);
+        rawfiducials.set(rawFiducials(count));
+        json.set(buildJson(count, botPose));
+    }
+
+    /**
+     * Find the tags the camera can see, filling in the visible arrays.
+     *
+     * @return the number of visible tags
+     */
+    private int findVisibleTags(Pose2d cameraPose) {
+        double halfHFov = config.horizontalFovDeg / 2;
+        double halfVFov = config.verticalFovDeg / 2;
+        double fovArea  = 4 * Math.tan(Math.toRadians(halfHFov)) * Math.tan(Math.toRadians(halfVFov));
+        int    count    = 0;
+
+        for (int i = 0; i < tags.length; i++) {
+            Pose2d        tagPose  = tags[i].pose.toPose2d();
+            Translation2d toTag    = tagPose.getTranslation().minus(cameraPose.getTranslation());
+            double        distance = toTag.getNorm();
+            if (distance > config.maxRangeMetres || distance < 0.1) {
+                continue;
+            }
+
+            // tag in front of the camera (camera frame: x forward, y left)
+            Translation2d inCamera = toTag.rotateBy(cameraPose.getRotation().unaryMinus());
+            double        bearing  = Math.toDegrees(Math.atan2(inCamera.getY(), inCamera.getX()));
+            double        height   = tags[i].pose.getZ() - config.cameraHeightMetres;
+            double        pitch    = Math.toDegrees(Math.atan2(height, inCamera.getX()));
+            if (inCamera.getX() <= 0 || Math.abs(bearing) > halfHFov || Math.abs(pitch) > halfVFov) {
+                continue;
+            }
+
+            // tag facing the camera. The tag faces along its pose heading.
+            Rotation2d    toCamera = new Rotation2d(-toTag.getX(), -toTag.getY());
+            double        view     = Math.abs(toCamera.minus(tagPose.getRotation()).getDegrees());
+            if (view > MAX_VIEW_ANGLE_DEG) {
+                continue;
+            }
+
+            double        area     = TAG_SIZE_METRES * TAG_SIZE_METRES * Math.cos(Math.toRadians(view))
+                / (distance * distance * fovArea);
+
+            visibleTagIndex[count] = i;
+            // limelight angles are clockwise / down positive
+            visibleTx[count]       = -bearing;
+            visibleTy[count]       = pitch;
+            visibleTa[count]       = area * 100;
+            visibleForward[count]  = inCamera.getX();
+            visibleRight[count]    = -inCamera.getY();
+            visibleYawDeg[count]   = toCamera.minus(tagPose.getRotation()).getDegrees();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the pose of tag in the limelight camera space: x right, y down, z forward, then roll,
+     * pitch, yaw
+     */
+    private double[] targetPose(int i) {
+        double height = tags[visibleTagIndex[i]].pose.getZ() - config.cameraHeightMetres;
+        return new double[] { visibleRight[i], -height, visibleForward[i], 0, visibleYawDeg[i], 0 };
+    }
+
+    /**
+     * @return the visible tags in the limelight rawfiducials format: id, txnc, tync, ta,
+     * distToCamera, distToRobot, ambiguity per tag
+     */
+    private double[] rawFiducials(int count) {
+        double[] raw = new double[count * 7];
+        for (int i = 0; i < count; i++) {
+            double height   = tags[visibleTagIndex[i]].pose.getZ() - config.cameraHeightMetres;
+            double distance = Math.sqrt(visibleForward[i] * visibleForward[i] + visibleRight[i] * visibleRight[i]
+                + height * height);
+            raw[i * 7]     = tags[visibleTagIndex[i]].ID;
+            raw[i * 7 + 1] = visibleTx[i];
+            raw[i * 7 + 2] = visibleTy[i];
+            raw[i * 7 + 3] = visibleTa[i];
+            raw[i * 7 + 4] = distance;
+            raw[i * 7 + 5] = distance;
+            raw[i * 7 + 6] = 0;
+        }
+        return raw;
+    }
+
+    private double[] botPose(Pose2d cameraPose, int count, double latencyMillis) {
+        double sumDistance = 0;
+        double sumArea     = 0;
+        double minRight    = Double.MAX_VALUE;
+        double maxRight    = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            sumDistance += Math.hypot(visibleForward[i], visibleRight[i]);
+            sumArea     += visibleTa[i];
+            minRight     = Math.min(minRight, visibleRight[i]);
+            maxRight     = Math.max(maxRight, visibleRight[i]);
+        }
+        double avgDistance = sumDistance / count;
+
+        // error grows with the square of the distance and shrinks with the number of tags
+        double scale       = Math.max(1, avgDistance * avgDistance) / Math.sqrt(count);
+        double x           = cameraPose.getX() + random.nextGaussian() * config.xyNoiseMetres * scale;
+        double y           = cameraPose.getY() + random.nextGaussian() * config.xyNoiseMetres * scale;
+        double yaw         = cameraPose.getRotation().getDegrees() + random.nextGaussian() * config.headingNoiseDeg * scale;
+
+        return new double[] { x, y, config.cameraHeightMetres, 0, 0, yaw, latencyMillis, count, maxRight - minRight,
+            avgDistance, sumArea / count };
+    }
+
+    /**
+     * Build the json dump in the limelight format. Only the fields read by the robot are included.
+     */
+    private String buildJson(int count, double[] botPose) {
+        StringBuilder sb = jsonBuilder;
+        sb.setLength(0);
+        sb.append("{\"Results\":{\"Fiducial\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            double[] t6t = targetPose(i);
+            sb.append("{\"fID\":").append(tags[visibleTagIndex[i]].ID)
+                .append(",\"fam\":\"36H11C\"")
+                .append(",\"ta\":").append(visibleTa[i])
+                .append(",\"tx\":").append(visibleTx[i])
+                .append(",\"ty\":").append(visibleTy[i])
+                .append(",\"t6t_rs\":[");
+            for (int j = 0; j < t6t.length; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append(t6t[j]);
+            }
+            sb.append("]}");
+        }
+        sb.append("],\"pID\":0")
+            .append(",\"cl\":").append(config.captureLatencyMillis)
+            .append(",\"tl\":").append(config.pipelineLatencyMillis)
+            .append(",\"ts\":").append(Timer.getFPGATimestamp() * 1000)
+            .append(",\"v\":").append(count > 0 ? 1 : 0);
+        if (botPose != null) {
+            sb.append(",\"botpose_wpiblue\":[");
+            for (int j = 0; j < 6; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append(botPose[j]);
+            }
+            sb.append(']');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        notifier.close();
+        botpose_wpiblue.close();
+        targetpose_robotspace.close();
+        rawfiducials.close();
+        tid.close();
+        tx.close();
+        ty.close();
+        ta.close();
+        tl.close();
+        cl.close();
+        hb.close();
+        json.close();
+        getpipe.close();
+        priorityid.close();
+        pipeline.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedLimelight " + camera.name;
+    }
+}
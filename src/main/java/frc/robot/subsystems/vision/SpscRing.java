@@ -0,0 +1,81 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * A fixed size, lock free, single-producer / single-consumer queue used to hand vision results from
+ * a camera worker thread to the main robot loop.
+ * <p>
+ * Exactly one thread may call {@link #offer(Object)} and exactly one (other) thread may call
+ * {@link #poll()}. Neither side ever blocks. If the consumer falls behind and the ring fills up,
+ * new items are dropped and counted rather than overwriting items the consumer may be reading.
+ *
+ * @param <T> the item type
+ */
+class SpscRing<T> {
+
+    private final Object[] buffer;
+    private final int      mask;
+
+    /** Next slot to read. Written only by the consumer. */
+    private volatile long  head    = 0;
+    /** Next slot to write. Written only by the producer. */
+    private volatile long  tail    = 0;
+
+    /** Items dropped because the ring was full. Written only by the producer. */
+    private volatile long  dropped = 0;
+
+    /**
+     * @param capacity the ring capacity, rounded up to a power of two
+     */
+    SpscRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new Object[size];
+        mask   = size - 1;
+    }
+
+    /**
+     * Add an item. Producer thread only.
+     *
+     * @param item the item, not null
+     * @return false if the ring was full and the item was dropped
+     */
+    boolean offer(T item) {
+        long t = tail;
+        if (t - head >= buffer.length) {
+            dropped = dropped + 1;
+            return false;
+        }
+        buffer[(int) (t & mask)] = item;
+        // the volatile write publishes the slot contents to the consumer
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Remove the oldest item. Consumer thread only.
+     *
+     * @return the item, or null if the ring is empty
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long h = head;
+        if (h == tail) {
+            return null;
+        }
+        int slot = (int) (h & mask);
+        T   item = (T) buffer[slot];
+        buffer[slot] = null;
+        head         = h + 1;
+        return item;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * @return the total number of items dropped because the ring was full
+     */
+    long getDroppedCount() {
+        return dropped;
+    }
+}
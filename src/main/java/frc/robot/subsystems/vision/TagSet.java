@@ -0,0 +1,145 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * An immutable set of AprilTag ids, stored as a bitset. Membership tests are O(1) and never
+ * allocate, which makes it suitable for the vision checks that run every loop.
+ */
+public final class TagSet {
+
+    /** The set containing no tags */
+    public static final TagSet EMPTY = new TagSet(new long[0]);
+
+    private final long[]       words;
+
+    private TagSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Create a set of tags
+     *
+     * @param tagIds the tag ids, which must not be negative
+     * @return the set
+     * @throws IllegalArgumentException if a tag id is negative
+     */
+    public static TagSet of(int... tagIds) {
+        int max = -1;
+        for (int tagId : tagIds) {
+            if (tagId < 0) {
+                throw new IllegalArgumentException("Invalid tag id " + tagId);
+            }
+            max = Math.max(max, tagId);
+        }
+        if (max < 0) {
+            return EMPTY;
+        }
+
+        long[] words = new long[(max >> 6) + 1];
+        for (int tagId : tagIds) {
+            words[tagId >> 6] |= 1L << tagId;
+        }
+        return new TagSet(words);
+    }
+
+    /**
+     * @param tagId the tag id. Ids outside of the set (including -1, meaning no tag) are allowed.
+     * @return true if the tag is in the set
+     */
+    public boolean contains(int tagId) {
+        int word = tagId >> 6;
+        return tagId >= 0 && word < words.length && (words[word] & (1L << tagId)) != 0;
+    }
+
+    /**
+     * @param other another set
+     * @return true if any tag is in both sets
+     */
+    public boolean intersects(TagSet other) {
+        int n = Math.min(words.length, other.words.length);
+        for (int i = 0; i < n; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Get the next tag in the set, for iterating over the set:
+     * {@code for (int id = set.next(0); id >= 0; id = set.next(id + 1))}
+     *
+     * @param fromTagId the tag id to start at (inclusive)
+     * @return the lowest tag id in the set that is at least fromTagId, or -1 if none
+     */
+    public int next(int fromTagId) {
+        int from = Math.max(0, fromTagId);
+        int i    = from >> 6;
+        if (i >= words.length) {
+            return -1;
+        }
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == words.length) {
+                return -1;
+            }
+            word = words[i];
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TagSet other)) {
+            return false;
+        }
+        int n = Math.max(words.length, other.words.length);
+        for (int i = 0; i < n; i++) {
+            long a = i < words.length ? words[i] : 0;
+            long b = i < other.words.length ? other.words[i] : 0;
+            if (a != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = 0;
+        for (int i = 0; i < words.length; i++) {
+            h ^= words[i] * (i + 1);
+        }
+        return Long.hashCode(h);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int id = next(0); id >= 0; id = next(id + 1)) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(id);
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,175 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * Predicts which AprilTags a camera can see from the robot pose, the camera mounting and field of
+ * view, and the field layout, so that the limelight can be pointed at the best tag of a target
+ * before the tag is in a frame.
+ * <p>
+ * A tag is predicted visible when it is within range, inside the field of view (less a margin for
+ * pose error), and facing the camera closely enough to be decoded. Visible tags are scored by their
+ * predicted image area, which is what the limelight itself uses to pick the primary target.
+ * <p>
+ * The tag geometry is held in arrays indexed by tag id, so predictions do not allocate beyond the
+ * camera pose.
+ * <p>
+ * Nothing is predicted for a camera that is not {@link Camera#calibrated}, since the prediction
+ * depends on where the camera is mounted and how it is tilted.
+ */
+public final class TagVisibilityPredictor {
+
+    /** Tags further away than this are not reliably decoded */
+    private static final double MAX_RANGE_METRES        = 6;
+
+    /** Tags viewed more obliquely than this are not reliably decoded */
+    private static final double MAX_VIEW_ANGLE_DEG      = 70;
+
+    /** Shrinks the field of view, so that tags near the edge are not predicted from a poor pose */
+    private static final double FOV_MARGIN_DEG          = 3;
+
+    /** A new priority tag must score this much better than the current one, to avoid flip-flopping */
+    private static final double PRIORITY_SWITCH_RATIO   = 1.5;
+
+    private final Camera        camera;
+    private final double        halfHFovRad;
+    private final double        halfVFovRad;
+    private final double        minViewCos;
+
+    /** Indexed by tag id */
+    private final boolean[]     tagPresent;
+    private final double[]      tagX;
+    private final double[]      tagY;
+    private final double[]      tagZ;
+    /** Indexed by tag id, the unit vector the tag faces along */
+    private final double[]      tagFacingX;
+    private final double[]      tagFacingY;
+
+    /**
+     * @param layout the field layout
+     * @param camera the camera, for its mounting and field of view
+     */
+    public TagVisibilityPredictor(AprilTagFieldLayout layout, Camera camera) {
+        this.camera      = camera;
+        this.halfHFovRad = Math.toRadians(camera.horizontalFovDeg / 2 - FOV_MARGIN_DEG);
+        this.halfVFovRad = Math.toRadians(camera.verticalFovDeg / 2 - FOV_MARGIN_DEG);
+        this.minViewCos  = Math.cos(Math.toRadians(MAX_VIEW_ANGLE_DEG));
+
+        int maxId = 0;
+        for (AprilTag tag : layout.getTags()) {
+            maxId = Math.max(maxId, tag.ID);
+        }
+        tagPresent = new boolean[maxId + 1];
+        tagX       = new double[maxId + 1];
+        tagY       = new double[maxId + 1];
+        tagZ       = new double[maxId + 1];
+        tagFacingX = new double[maxId + 1];
+        tagFacingY = new double[maxId + 1];
+
+        for (AprilTag tag : layout.getTags()) {
+            Pose2d pose = tag.pose.toPose2d();
+            tagPresent[tag.ID] = true;
+            tagX[tag.ID]       = pose.getX();
+            tagY[tag.ID]       = pose.getY();
+            tagZ[tag.ID]       = tag.pose.getZ();
+            tagFacingX[tag.ID] = pose.getRotation().getCos();
+            tagFacingY[tag.ID] = pose.getRotation().getSin();
+        }
+    }
+
+    /**
+     * Find the tag of a set that should be the most prominent in the camera image
+     *
+     * @param robotPose the robot pose
+     * @param candidates the tags to choose from, e.g. the tags of a target
+     * @return the tag with the largest predicted area, or -1 if no candidate should be visible or
+     * the camera is not calibrated
+     */
+    public int getBestTag(Pose2d robotPose, TagSet candidates) {
+        if (!camera.calibrated) {
+            return -1;
+        }
+        return getBestTag(robotPose.transformBy(camera.robotToCamera), candidates, -1);
+    }
+
+    /**
+     * Choose the priority tag for a target. The current priority tag is kept while it is visible
+     * unless another tag of the target is predicted to be much more prominent.
+     *
+     * @param robotPose the robot pose
+     * @param candidates the tags of the target
+     * @param currentTag the current priority tag, or -1
+     * @return the best predicted tag, or the current tag if it is one of the candidates and no
+     * candidate should be visible, or -1 if neither or the camera is not calibrated
+     */
+    public int choosePriorityTag(Pose2d robotPose, TagSet candidates, int currentTag) {
+        if (!camera.calibrated) {
+            return -1;
+        }
+        if (!candidates.contains(currentTag)) {
+            return getBestTag(robotPose, candidates);
+        }
+        return getBestTag(robotPose.transformBy(camera.robotToCamera), candidates, currentTag);
+    }
+
+    /**
+     * @param currentTag the tag to keep unless another scores {@link #PRIORITY_SWITCH_RATIO} times
+     * better, or -1
+     * @return the best tag, or currentTag if no candidate is visible
+     */
+    private int getBestTag(Pose2d cameraPose, TagSet candidates, int currentTag) {
+        int    best      = currentTag;
+        double bestScore = currentTag < 0 ? 0 : score(cameraPose, currentTag) * PRIORITY_SWITCH_RATIO;
+        for (int id = candidates.next(0); id >= 0; id = candidates.next(id + 1)) {
+            double score = score(cameraPose, id);
+            if (score > bestScore) {
+                best      = id;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Score a tag by its predicted area in the image, relative to a tag face on at one metre
+     *
+     * @param cameraPose the camera pose on the field
+     * @param tagId the tag id
+     * @return the score, or 0 if the tag should not be visible
+     */
+    private double score(Pose2d cameraPose, int tagId) {
+        if (tagId < 0 || tagId >= tagPresent.length || !tagPresent[tagId]) {
+            return 0;
+        }
+        double dx        = tagX[tagId] - cameraPose.getX();
+        double dy        = tagY[tagId] - cameraPose.getY();
+        double distance2 = dx * dx + dy * dy;
+        if (distance2 > MAX_RANGE_METRES * MAX_RANGE_METRES || distance2 < 0.01) {
+            return 0;
+        }
+        double distance  = Math.sqrt(distance2);
+
+        // in the camera frame, x forward and y left
+        double cos       = cameraPose.getRotation().getCos();
+        double sin       = cameraPose.getRotation().getSin();
+        double forward   = dx * cos + dy * sin;
+        double left      = -dx * sin + dy * cos;
+        if (forward <= 0 || Math.abs(Math.atan2(left, forward)) > halfHFovRad) {
+            return 0;
+        }
+        double elevation = Math.atan2(tagZ[tagId] - camera.heightMetres, distance) - Math.toRadians(camera.pitchDeg);
+        if (Math.abs(elevation) > halfVFovRad) {
+            return 0;
+        }
+
+        // the tag must face the camera
+        double viewCos   = -(dx * tagFacingX[tagId] + dy * tagFacingY[tagId]) / distance;
+        if (viewCos < minViewCos) {
+            return 0;
+        }
+        return viewCos / distance2;
+    }
+}
@@ -0,0 +1,29 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.BotTarget;
+
+/**
+ * The location of the centre of a field target relative to the robot, solved from the tags visible
+ * in a camera frame.
+ *
+ * @param target the target
+ * @param cameraBearing the direction to the target centre from the camera, counter-clockwise
+ * positive, zero when the camera faces the target
+ * @param robotToTarget the translation from the robot centre to the target centre on the floor
+ * plane, robot relative
+ * @param tagCount the number of tags used
+ * @param timestampSeconds the FPGA time the frame was captured
+ * @see TargetSolver
+ */
+public record TargetSolution(BotTarget target, Rotation2d cameraBearing, Translation2d robotToTarget, int tagCount,
+    double timestampSeconds) {
+
+    /**
+     * @return the floor plane distance from the robot centre to the target centre
+     */
+    public double getRangeMetres() {
+        return robotToTarget.getNorm();
+    }
+}
@@ -0,0 +1,107 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.BotTarget;
+import frc.robot.Constants.VisionConstants.Camera;
+
+/**
+ * Finds the centre of a field target (e.g. the speaker opening) from every visible tag that marks
+ * it, rather than aiming at whichever tag the limelight picked as primary.
+ * <p>
+ * Each visible tag of the target gives an estimate of the target centre: the tag position measured
+ * by the camera plus the tag's precomputed offset to the target centre ({@link TargetTagTable}),
+ * rotated from the field into the camera frame using the robot heading at the time the frame was
+ * captured. The estimates are averaged, weighted by the inverse square of the tag distance. Because
+ * every tag leads to the same point, the solution does not jump when the visible tags change.
+ * <p>
+ * Without a heading the offsets cannot be rotated into the camera frame, and the nearest tag of the
+ * target is used as the aim point.
+ */
+public class TargetSolver {
+
+    /** Tags closer than this are weighted as if they were this far away */
+    private static final double  MIN_WEIGHT_DISTANCE_METRES = 0.5;
+
+    private final TargetTagTable table;
+    private final Camera         camera;
+
+    /**
+     * @param table the target tags and offsets
+     * @param camera the camera the frames come from
+     */
+    public TargetSolver(TargetTagTable table, Camera camera) {
+        this.table  = table;
+        this.camera = camera;
+    }
+
+    /**
+     * Solve for the centre of a target
+     *
+     * @param frame the camera frame
+     * @param target the target
+     * @param robotHeading the field heading of the robot when the frame was captured, or null if not
+     * known
+     * @return the solution, or null if no tag of the target is visible
+     */
+    public TargetSolution solve(VisionFrame frame, BotTarget target, Rotation2d robotHeading) {
+        TagSet tags = table.getTags(target);
+        if (tags.isEmpty() || frame.getVisibleTagCount() == 0) {
+            return null;
+        }
+
+        boolean useOffsets = robotHeading != null;
+        // rotation from the field into the camera frame
+        double  cameraYaw  = useOffsets ? robotHeading.getRadians() + camera.robotToCamera.getRotation().getRadians() : 0;
+        double  cos        = Math.cos(-cameraYaw);
+        double  sin        = Math.sin(-cameraYaw);
+
+        double  sumWeight  = 0;
+        double  sumForward = 0;
+        double  sumLeft    = 0;
+        int     count      = 0;
+        double  nearest    = Double.MAX_VALUE;
+
+        for (int i = 0; i < frame.getVisibleTagCount(); i++) {
+            AprilTagInfo tag = frame.getVisibleTag(i);
+            if (!tags.contains(tag.tagId()) || Double.isNaN(tag.xTrans()) || Double.isNaN(tag.yTrans())) {
+                continue;
+            }
+
+            // limelight target space is x right, z forward
+            double forward  = tag.xTrans();
+            double left     = -tag.yTrans();
+            double distance = Math.hypot(forward, left);
+
+            if (useOffsets) {
+                double offsetX = table.getOffsetX(tag.tagId());
+                double offsetY = table.getOffsetY(tag.tagId());
+                double weight  = 1 / square(Math.max(MIN_WEIGHT_DISTANCE_METRES, distance));
+                sumForward += weight * (forward + cos * offsetX - sin * offsetY);
+                sumLeft    += weight * (left + sin * offsetX + cos * offsetY);
+                sumWeight  += weight;
+            }
+            else if (distance < nearest) {
+                nearest    = distance;
+                sumForward = forward;
+                sumLeft    = left;
+                sumWeight  = 1;
+            }
+            count++;
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        Translation2d cameraToTarget = new Translation2d(sumForward / sumWeight, sumLeft / sumWeight);
+        Translation2d robotToTarget  = cameraToTarget.rotateBy(camera.robotToCamera.getRotation())
+            .plus(camera.robotToCamera.getTranslation());
+
+        return new TargetSolution(target, cameraToTarget.getAngle(), robotToTarget, count, frame.getTimestampSeconds());
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
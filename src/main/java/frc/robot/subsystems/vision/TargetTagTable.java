@@ -0,0 +1,148 @@
+package frc.robot.subsystems.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.BotTarget;
+
+/**
+ * The mapping between field targets and the AprilTags that mark them, built from the field layout
+ * rather than by hand. A tag belongs to a target if it is within {@link #TAG_TARGET_RADIUS_METRES}
+ * of the target location on the floor plane. Lookups in either direction are O(1) array reads.
+ * <p>
+ * The table also holds, for each tag, the offset on the field from the tag to the centre of its
+ * target, so the target centre can be found from any of its tags.
+ */
+public final class TargetTagTable {
+
+    /** Tags within this distance of a target location mark that target */
+    private static final double TAG_TARGET_RADIUS_METRES = 1.0;
+
+    /** Indexed by BotTarget ordinal */
+    private final TagSet[]      targetTags;
+    /** Indexed by BotTarget ordinal, -1 if the target has no tags */
+    private final int[]         priorityTag;
+    /** Indexed by tag id */
+    private final BotTarget[]   tagTarget;
+    /** Indexed by tag id, the field x and y offset from the tag to the centre of its target */
+    private final double[]      tagOffsetX;
+    private final double[]      tagOffsetY;
+    private final TagSet        allTags;
+
+    /**
+     * Build the table
+     *
+     * @param layout the field layout
+     */
+    public TargetTagTable(AprilTagFieldLayout layout) {
+        BotTarget[]    targets = BotTarget.values();
+        List<AprilTag> tags    = layout.getTags();
+
+        int            maxId   = 0;
+        int[]          allIds  = new int[tags.size()];
+        for (int i = 0; i < allIds.length; i++) {
+            allIds[i] = tags.get(i).ID;
+            maxId     = Math.max(maxId, allIds[i]);
+        }
+
+        allTags     = TagSet.of(allIds);
+        targetTags  = new TagSet[targets.length];
+        priorityTag = new int[targets.length];
+        tagTarget   = new BotTarget[maxId + 1];
+        tagOffsetX  = new double[maxId + 1];
+        tagOffsetY  = new double[maxId + 1];
+        Arrays.fill(tagTarget, BotTarget.NONE);
+
+        for (BotTarget target : targets) {
+            targetTags[target.ordinal()]  = TagSet.EMPTY;
+            priorityTag[target.ordinal()] = -1;
+
+            if (target == BotTarget.NONE || target == BotTarget.ALL) {
+                continue;
+            }
+
+            // the tags of this target, nearest first (the nearest is the one at its centre)
+            Translation2d  location = target.getLocation().toTranslation2d();
+            List<AprilTag> nearby   = new ArrayList<>();
+            for (AprilTag tag : tags) {
+                if (tag.pose.toPose2d().getTranslation().getDistance(location) <= TAG_TARGET_RADIUS_METRES) {
+                    nearby.add(tag);
+                }
+            }
+            if (nearby.isEmpty()) {
+                continue;
+            }
+            nearby.sort(Comparator.<AprilTag> comparingDouble(
+                tag -> tag.pose.toPose2d().getTranslation().getDistance(location)).thenComparingInt(tag -> tag.ID));
+
+            int[] ids = new int[nearby.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Translation2d tag = nearby.get(i).pose.toPose2d().getTranslation();
+                ids[i]             = nearby.get(i).ID;
+                tagTarget[ids[i]]  = target;
+                tagOffsetX[ids[i]] = location.getX() - tag.getX();
+                tagOffsetY[ids[i]] = location.getY() - tag.getY();
+            }
+            targetTags[target.ordinal()]  = TagSet.of(ids);
+            priorityTag[target.ordinal()] = ids[0];
+        }
+        targetTags[BotTarget.ALL.ordinal()] = allTags;
+    }
+
+    /**
+     * @param target the field target
+     * @return the tags marking the target. Empty for NONE and for targets not marked by tags (e.g.
+     * notes). Every tag for ALL.
+     */
+    public TagSet getTags(BotTarget target) {
+        return targetTags[target.ordinal()];
+    }
+
+    /**
+     * @param target the field target
+     * @return the tag closest to the centre of the target, or -1 if the target has no tags (or is
+     * ALL)
+     */
+    public int getPriorityTag(BotTarget target) {
+        return priorityTag[target.ordinal()];
+    }
+
+    /**
+     * @param tagId the tag id
+     * @return the target marked by the tag, or NONE
+     */
+    public BotTarget getTarget(int tagId) {
+        if (tagId < 0 || tagId >= tagTarget.length) {
+            return BotTarget.NONE;
+        }
+        return tagTarget[tagId];
+    }
+
+    /**
+     * @param tagId the tag id of a tag that marks a target
+     * @return the field x offset from the tag to the centre of its target
+     */
+    public double getOffsetX(int tagId) {
+        return tagOffsetX[tagId];
+    }
+
+    /**
+     * @param tagId the tag id of a tag that marks a target
+     * @return the field y offset from the tag to the centre of its target
+     */
+    public double getOffsetY(int tagId) {
+        return tagOffsetY[tagId];
+    }
+
+    /**
+     * @return every tag on the field
+     */
+    public TagSet getAllTags() {
+        return allTags;
+    }
+}
@@ -0,0 +1,213 @@
+package frc.robot.subsystems.vision;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of everything the vision subsystem reads from a limelight for a single
+ * camera frame. A frame is built once when new data arrives, and all of the public vision API
+ * answers from the most recent frame rather than going back to NetworkTables.
+ *
+ * @see HughVisionSubsystem
+ */
+public final class VisionFrame {
+
+    /** A frame containing no data, used before the first limelight frame arrives */
+    public static final VisionFrame EMPTY = new VisionFrame(0, 0, -1, false, null, 0, Double.MAX_VALUE, -1,
+        Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, new AprilTagInfo[0], new DetectorResult[0],
+        null);
+
+    private final long               timestampMicros;
+    private final double             timestampSeconds;
+    private final int                pipelineIndex;
+    private final boolean            valid;
+    private final double[]           botPose;
+    private final int                numActiveTargets;
+    private final double             targetAvgDistance;
+    private final int                tid;
+    private final double             tx;
+    private final double             ty;
+    private final double             ta;
+    private final double             tl;
+    private final AprilTagInfo[]     visibleTags;
+    private final TagSet             visibleTagIds;
+    private final DetectorResult[]   detections;
+    private final VisionPositionInfo positionInfo;
+
+    /**
+     * Create a frame. Arrays passed in become owned by the frame and must not be modified afterward.
+     *
+     * @param timestampMicros NetworkTables timestamp of the frame, used to tell frames apart
+     * @param timestampSeconds the FPGA time the frame was captured
+     * @param pipelineIndex the pipeline the limelight reported it was running
+     * @param valid false if the frame is from the wrong pipeline or the warm-up after a switch
+     * @param botPose the botpose_wpiblue array, or null if the limelight has no pose
+     * @param numActiveTargets the number of tags used to compute the bot pose
+     * @param targetAvgDistance the average distance to the tags used for the bot pose, or
+     * Double.MAX_VALUE
+     * @param tid the primary tag id, -1 if none
+     * @param tx primary target horizontal offset (degrees), Double.MIN_VALUE if none
+     * @param ty primary target vertical offset (degrees), Double.MIN_VALUE if none
+     * @param ta primary target area, Double.MIN_VALUE if none
+     * @param tl pipeline latency (ms), Double.MIN_VALUE if none
+     * @param visibleTags every tag decoded from the json blob
+     * @param detections every detector result decoded from the json blob
+     * @param positionInfo the robot position computed from this frame, or null if not usable
+     */
+    VisionFrame(long timestampMicros, double timestampSeconds, int pipelineIndex, boolean valid, double[] botPose,
+        int numActiveTargets, double targetAvgDistance, int tid, double tx, double ty, double ta, double tl,
+        AprilTagInfo[] visibleTags, DetectorResult[] detections, VisionPositionInfo positionInfo) {
+        this.timestampMicros   = timestampMicros;
+        this.timestampSeconds  = timestampSeconds;
+        this.pipelineIndex     = pipelineIndex;
+        this.valid             = valid;
+        this.botPose           = botPose;
+        this.numActiveTargets  = numActiveTargets;
+        this.targetAvgDistance = targetAvgDistance;
+        this.tid               = tid;
+        this.tx                = tx;
+        this.ty                = ty;
+        this.ta                = ta;
+        this.tl                = tl;
+        this.visibleTags       = visibleTags;
+        this.visibleTagIds     = toTagSet(visibleTags);
+        this.detections        = detections;
+        this.positionInfo      = positionInfo;
+    }
+
+    private static TagSet toTagSet(AprilTagInfo[] tags) {
+        int[] ids   = new int[tags.length];
+        int   count = 0;
+        for (AprilTagInfo tag : tags) {
+            if (tag.tagId() >= 0) {
+                ids[count++] = tag.tagId();
+            }
+        }
+        return TagSet.of(count == ids.length ? ids : Arrays.copyOf(ids, count));
+    }
+
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    /**
+     * @return the FPGA time the frame was captured
+     */
+    public double getTimestampSeconds() {
+        return timestampSeconds;
+    }
+
+    public int getPipelineIndex() {
+        return pipelineIndex;
+    }
+
+    /**
+     * @return false if the frame came from the wrong pipeline, or from the warm-up after a pipeline
+     * switch, and should not be used
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return the number of tags used to compute the bot pose
+     */
+    public int getNumActiveTargets() {
+        return numActiveTargets;
+    }
+
+    /**
+     * @return the average distance in metres to the tags used to compute the bot pose. If no value,
+     * returns Double.MAX_VALUE.
+     */
+    public double getTargetAvgDistance() {
+        return targetAvgDistance;
+    }
+
+    public int getTid() {
+        return tid;
+    }
+
+    public double getTx() {
+        return tx;
+    }
+
+    public double getTy() {
+        return ty;
+    }
+
+    public double getTa() {
+        return ta;
+    }
+
+    public double getTl() {
+        return tl;
+    }
+
+    /**
+     * @return the robot position computed from this frame, or null if this frame is not usable for
+     * localization
+     */
+    public VisionPositionInfo getPositionInfo() {
+        return positionInfo;
+    }
+
+    public int getVisibleTagCount() {
+        return visibleTags.length;
+    }
+
+    public AprilTagInfo getVisibleTag(int i) {
+        return visibleTags[i];
+    }
+
+    /**
+     * @return the ids of every tag decoded from the json blob of this frame
+     */
+    public TagSet getVisibleTagIds() {
+        return visibleTagIds;
+    }
+
+    /**
+     * @return the number of objects found by the detector pipeline in this frame
+     */
+    public int getDetectionCount() {
+        return detections.length;
+    }
+
+    public DetectorResult getDetection(int i) {
+        return detections[i];
+    }
+
+    /**
+     * @return a string representing the botpose array, for telemetry
+     */
+    public String botPoseToString() {
+        return Arrays.toString(botPose);
+    }
+
+    /**
+     * @return a string representing the visible tags, for telemetry
+     */
+    public String visibleTagsToString() {
+        if (visibleTags.length == 0) {
+            return "[]";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < visibleTags.length; i++) {
+            AprilTagInfo tag = visibleTags[i];
+            sb.append("[Tag:");
+            sb.append(tag.tagId());
+            sb.append(",xDeg:");
+            sb.append(tag.xAngle());
+            sb.append(",Dist:");
+            sb.append(tag.targetDistance());
+            sb.append("]");
+            if (i < visibleTags.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,193 @@
+package frc.robot.subsystems.vision;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Ingestion health of one camera: how fast frames arrive, what each source costs to read, how many
+ * poses are thrown away and why, and how old a pose is when the robot loop takes it and when it is
+ * fused into the pose estimator.
+ * <p>
+ * The worker thread and the robot loop each write their own counters (single writer, volatile
+ * where the other thread reads them), and the latency histograms are only touched by the robot
+ * loop, so recording is lock and allocation free. Everything is published to the dashboard and the
+ * on-robot data log once every {@link #PUBLISH_PERIOD_SEC}; the histograms cover the last period
+ * and the counters are totals.
+ */
+public final class VisionMetrics {
+
+    private static final double               PUBLISH_PERIOD_SEC = 1.0;
+
+    private final String                      prefix;
+
+    // worker thread only
+    private volatile long                     heartbeats         = 0;
+    private volatile long                     botPoses           = 0;
+    private volatile long                     noPose             = 0;
+    private volatile long                     offPipeline        = 0;
+    private volatile long                     ringDropped        = 0;
+    private volatile long                     duplicates         = 0;
+    private volatile long                     rawFiducials       = 0;
+    private volatile long                     jsonParses         = 0;
+    private volatile long                     jsonChars          = 0;
+    private volatile long                     jsonParseNanos     = 0;
+
+    // robot loop only
+    private long                              consumed           = 0;
+    private long                              gateRejected       = 0;
+    private long                              fused              = 0;
+    private final LatencyHistogram            consumedAge        = new LatencyHistogram();
+    private final LatencyHistogram            fusionLatency      = new LatencyHistogram();
+
+    private final RateMeter                   heartbeatRate      = new RateMeter();
+    private final RateMeter                   botPoseRate        = new RateMeter();
+    private final RateMeter                   rawFiducialsRate   = new RateMeter();
+    private final RateMeter                   jsonParseRate      = new RateMeter();
+    private final RateMeter                   jsonCharRate       = new RateMeter();
+    private final RateMeter                   jsonParseNanosRate = new RateMeter();
+    private double                            lastPublishTime    = Double.NEGATIVE_INFINITY;
+
+    /** Created on the first publish, so that tools that never publish do not start a data log */
+    private final Map<String, DoubleLogEntry> logEntries         = new HashMap<>();
+
+    /**
+     * @param cameraName the camera name, used in the dashboard and log keys
+     */
+    VisionMetrics(String cameraName) {
+        this.prefix = "Vision/" + cameraName + "/";
+    }
+
+    /**
+     * Worker thread: frames (heartbeats) received from the limelight
+     */
+    void recordHeartbeats(int count) {
+        heartbeats = heartbeats + count;
+    }
+
+    /**
+     * Worker thread: botposes read, whether or not they produced a pose
+     */
+    void recordBotPoses(int count) {
+        botPoses = botPoses + count;
+    }
+
+    /**
+     * Worker thread: a botpose without a usable pose (no tags, or the robot off the floor)
+     */
+    void recordNoPose() {
+        noPose = noPose + 1;
+    }
+
+    /**
+     * Worker thread: a pose from the wrong pipeline or the warm-up after a pipeline switch
+     */
+    void recordOffPipeline() {
+        offPipeline = offPipeline + 1;
+    }
+
+    /**
+     * Worker thread: a pose dropped because the robot loop did not keep up
+     */
+    void recordRingDropped() {
+        ringDropped = ringDropped + 1;
+    }
+
+    /**
+     * Worker thread: a botpose the limelight published again, dropped so it is not fused twice
+     */
+    void recordDuplicate() {
+        duplicates = duplicates + 1;
+    }
+
+    /**
+     * Worker thread: the visible tags were read from rawfiducials
+     */
+    void recordRawFiducials() {
+        rawFiducials = rawFiducials + 1;
+    }
+
+    /**
+     * Worker thread: a json blob was parsed
+     *
+     * @param chars the length of the blob
+     * @param nanos the parse time
+     */
+    void recordJsonParse(int chars, long nanos) {
+        jsonParses     = jsonParses + 1;
+        jsonChars      = jsonChars + chars;
+        jsonParseNanos = jsonParseNanos + nanos;
+    }
+
+    /**
+     * Robot loop: a pose was taken by the robot loop
+     *
+     * @param ageSec the time from capture to now
+     */
+    void recordConsumed(double ageSec) {
+        consumed++;
+        consumedAge.record(ageSec * 1000);
+    }
+
+    /**
+     * Robot loop: a pose rejected as inconsistent with the estimated pose
+     */
+    public void recordGateRejected() {
+        gateRejected++;
+    }
+
+    /**
+     * Robot loop: a pose was fused into the pose estimator
+     *
+     * @param latencySec the time from capture to fusion
+     */
+    public void recordFused(double latencySec) {
+        fused++;
+        fusionLatency.record(latencySec * 1000);
+    }
+
+    /**
+     * Publish the metrics if a period has passed since they were last published. Robot loop only.
+     *
+     * @param now the current FPGA time
+     */
+    public void publish(double now) {
+        if (now - lastPublishTime < PUBLISH_PERIOD_SEC) {
+            return;
+        }
+        lastPublishTime = now;
+
+        put("FramesPerSec", heartbeatRate.update(heartbeats, now));
+        put("BotPosesPerSec", botPoseRate.update(botPoses, now));
+        put("RawFiducialsPerSec", rawFiducialsRate.update(rawFiducials, now));
+        put("JsonParsesPerSec", jsonParseRate.update(jsonParses, now));
+        put("JsonKBPerSec", jsonCharRate.update(jsonChars, now) / 1024);
+        put("JsonParseMsPerSec", jsonParseNanosRate.update(jsonParseNanos, now) / 1e6);
+
+        put("Dropped/NoPose", noPose);
+        put("Dropped/OffPipeline", offPipeline);
+        put("Dropped/RingFull", ringDropped);
+        put("Dropped/Duplicate", duplicates);
+        put("Dropped/GateRejected", gateRejected);
+        put("Consumed", consumed);
+        put("Fused", fused);
+
+        put("AgeMs/p50", consumedAge.getPercentileMs(0.5));
+        put("AgeMs/p95", consumedAge.getPercentileMs(0.95));
+        put("AgeMs/max", consumedAge.getMaxMs());
+        put("FusionLatencyMs/p50", fusionLatency.getPercentileMs(0.5));
+        put("FusionLatencyMs/p95", fusionLatency.getPercentileMs(0.95));
+        put("FusionLatencyMs/max", fusionLatency.getMaxMs());
+        consumedAge.reset();
+        fusionLatency.reset();
+    }
+
+    private void put(String name, double value) {
+        String key = prefix + name;
+        SmartDashboard.putNumber(key, value);
+        logEntries.computeIfAbsent(key, k -> new DoubleLogEntry(DataLogManager.getLog(), k)).append(value);
+    }
+}
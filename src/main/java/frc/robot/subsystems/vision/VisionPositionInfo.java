@@ -1,11 +1,26 @@
 package frc.robot.subsystems.vision;
 
 import edu.wpi.first.math.geometry.Pose2d;
+import frc.robot.Constants.VisionConstants.Camera;
 
-public record VisionPositionInfo(Pose2d pose, double latencyMillis, PoseConfidence poseConfidence) {
+/**
+ * The robot position computed from a single vision frame.
+ *
+ * @param camera the camera the frame came from
+ * @param pose the robot pose
+ * @param latencyMillis the total limelight latency (capture + pipeline)
+ * @param timestampSeconds the time the image was captured, in the FPGA timebase used by the pose
+ * estimator
+ * @param poseConfidence the confidence rating of the pose
+ * @param frameId identifies the camera frame the pose was computed from. Two infos with the same
+ * frameId came from the same frame.
+ * @param tagCount the number of tags used to compute the pose
+ * @param avgTagDistanceMetres the average distance from the camera to those tags
+ */
+public record VisionPositionInfo(Camera camera, Pose2d pose, double latencyMillis, double timestampSeconds,
+    PoseConfidence poseConfidence, long frameId, int tagCount, double avgTagDistanceMetres) {
     public String toString() {
-        return String.format("%.2f,%.2f %.0fd %.0fms ", pose.getTranslation().getX(), pose.getTranslation().getY(),
+        return camera + " " + String.format("%.2f,%.2f %.0fd %.0fms ", pose.getTranslation().getX(), pose.getTranslation().getY(),
             pose.getRotation().getDegrees(), latencyMillis) + poseConfidence;
     }
 }
-
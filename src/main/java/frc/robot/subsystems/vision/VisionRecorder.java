@@ -0,0 +1,236 @@
+package frc.robot.subsystems.vision;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.wpi.first.networktables.MultiSubscriber;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableListenerPoller;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Records every value the limelights publish (all "limelight-*" tables) to a compact binary file, so
+ * that a match can be replayed into the vision code off-robot with {@link VisionReplayer}.
+ * <p>
+ * Values are captured from a NetworkTables listener queue on a background thread, so recording
+ * never blocks the robot loop. Only values published by the cameras are recorded; values written
+ * by the robot (e.g. pipeline, priorityid) are not. Recording stops when the file reaches its size
+ * limit, so a recorder that is left running cannot fill the disk.
+ * <p>
+ * File format (big endian, as written by {@link DataOutputStream}): the {@link #MAGIC} int and the
+ * {@link #VERSION} short, followed by records. Each record starts with a record type byte:
+ * <ul>
+ * <li>{@link #RECORD_TOPIC}: topic id (short), topic name (UTF), value type (byte). Written the
+ * first time a topic is seen.</li>
+ * <li>{@link #RECORD_VALUE}: topic id (short), NetworkTables server time in microseconds (long),
+ * then the value: a double, a double array (int length + doubles), a string (int length + UTF-8
+ * bytes), a long, or a boolean.</li>
+ * </ul>
+ */
+public class VisionRecorder implements AutoCloseable {
+
+    static final int                         MAGIC             = 0x4C4C5243; // "LLRC"
+    static final short                       VERSION           = 1;
+
+    static final byte                        RECORD_TOPIC      = 1;
+    static final byte                        RECORD_VALUE      = 2;
+
+    static final byte                        TYPE_DOUBLE       = 1;
+    static final byte                        TYPE_DOUBLE_ARRAY = 2;
+    static final byte                        TYPE_STRING       = 3;
+    static final byte                        TYPE_INTEGER      = 4;
+    static final byte                        TYPE_BOOLEAN      = 5;
+
+    /** The prefix of every limelight topic */
+    static final String                      TOPIC_PREFIX      = "/limelight-";
+
+    private static final double              WAIT_SEC          = 0.1;
+
+    /** Flush at least this often so a power loss costs at most a second of data */
+    private static final long                FLUSH_MICROS      = 1_000_000;
+
+    private final File                       file;
+    private final long                       maxBytes;
+    private final DataOutputStream           out;
+    private final MultiSubscriber            subscriber;
+    private final NetworkTableListenerPoller poller;
+    private final Thread                     worker;
+
+    /** Worker thread only */
+    private final Map<String, Short>         topicIds          = new HashMap<>();
+    private long                             lastFlushMicros   = 0;
+
+    private volatile long                    recordCount       = 0;
+    private volatile boolean                 full              = false;
+
+    /**
+     * Start recording to a new, timestamped file in a directory.
+     *
+     * @param inst the NetworkTables instance the limelights publish to
+     * @param directory the directory, which is created if required
+     * @param maxBytes the size limit of the file, at which recording stops
+     * @throws IOException if the file cannot be created
+     */
+    public VisionRecorder(NetworkTableInstance inst, File directory, long maxBytes) throws IOException {
+        directory.mkdirs();
+        file          = new File(directory, "vision-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".llrec");
+        this.maxBytes = maxBytes;
+        out        = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        subscriber = new MultiSubscriber(inst, new String[] { TOPIC_PREFIX }, PubSubOption.keepDuplicates(true),
+            PubSubOption.pollStorage(100));
+        poller     = new NetworkTableListenerPoller(inst);
+        poller.addListener(subscriber, EnumSet.of(NetworkTableEvent.Kind.kValueRemote));
+
+        worker     = new Thread(this::runWorker, "vision-recorder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return true if the file reached its size limit and recording stopped
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    private void runWorker() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    WPIUtilJNI.waitForObjectTimeout(poller.getHandle(), WAIT_SEC);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+
+                for (NetworkTableEvent event : poller.readQueue()) {
+                    if (event.valueData != null) {
+                        write(event.valueData.getTopic().getName(), event.valueData.value);
+                    }
+                }
+
+                // size() is an int, and stops counting at Integer.MAX_VALUE
+                if (out.size() >= Math.min(maxBytes, Integer.MAX_VALUE)) {
+                    full = true;
+                    DriverStation.reportWarning("Vision recording to " + file + " stopped at its limit of " + maxBytes
+                        + " bytes", false);
+                    break;
+                }
+
+                long now = WPIUtilJNI.now();
+                if (now - lastFlushMicros > FLUSH_MICROS) {
+                    out.flush();
+                    lastFlushMicros = now;
+                }
+            }
+        }
+        catch (IOException e) {
+            DriverStation.reportWarning("Vision recording to " + file + " stopped: " + e, false);
+        }
+        finally {
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+    private void write(String topic, NetworkTableValue value) throws IOException {
+        byte type;
+        switch (value.getType()) {
+        case kDouble -> type = TYPE_DOUBLE;
+        case kDoubleArray -> type = TYPE_DOUBLE_ARRAY;
+        case kString -> type = TYPE_STRING;
+        case kInteger -> type = TYPE_INTEGER;
+        case kBoolean -> type = TYPE_BOOLEAN;
+        default -> {
+            // the limelight does not publish other types
+            return;
+        }
+        }
+
+        Short id = topicIds.get(topic);
+        if (id == null) {
+            id = (short) topicIds.size();
+            topicIds.put(topic, id);
+            out.writeByte(RECORD_TOPIC);
+            out.writeShort(id);
+            out.writeUTF(topic);
+            out.writeByte(type);
+        }
+
+        out.writeByte(RECORD_VALUE);
+        out.writeShort(id);
+        out.writeLong(value.getServerTime() != 0 ? value.getServerTime() : value.getTime());
+
+        switch (type) {
+        case TYPE_DOUBLE -> out.writeDouble(value.getDouble());
+        case TYPE_DOUBLE_ARRAY -> {
+            double[] array = value.getDoubleArray();
+            out.writeInt(array.length);
+            for (double d : array) {
+                out.writeDouble(d);
+            }
+        }
+        case TYPE_STRING -> {
+            byte[] bytes = value.getString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        case TYPE_INTEGER -> out.writeLong(value.getInteger());
+        default -> out.writeBoolean(value.getBoolean());
+        }
+
+        recordCount = recordCount + 1;
+    }
+
+    /**
+     * Stop recording and close the file.
+     */
+    @Override
+    public void close() {
+        worker.interrupt();
+        try {
+            worker.join(1000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        poller.close();
+        subscriber.close();
+    }
+
+    @Override
+    public String toString() {
+        return "VisionRecorder " + file;
+    }
+}
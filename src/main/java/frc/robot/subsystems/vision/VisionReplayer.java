@@ -0,0 +1,398 @@
+package frc.robot.subsystems.vision;
+
+import static frc.robot.subsystems.vision.VisionRecorder.MAGIC;
+import static frc.robot.subsystems.vision.VisionRecorder.RECORD_TOPIC;
+import static frc.robot.subsystems.vision.VisionRecorder.RECORD_VALUE;
+import static frc.robot.subsystems.vision.VisionRecorder.TOPIC_PREFIX;
+import static frc.robot.subsystems.vision.VisionRecorder.TYPE_BOOLEAN;
+import static frc.robot.subsystems.vision.VisionRecorder.TYPE_DOUBLE;
+import static frc.robot.subsystems.vision.VisionRecorder.TYPE_DOUBLE_ARRAY;
+import static frc.robot.subsystems.vision.VisionRecorder.TYPE_INTEGER;
+import static frc.robot.subsystems.vision.VisionRecorder.TYPE_STRING;
+import static frc.robot.subsystems.vision.VisionRecorder.VERSION;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.networktables.GenericPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.BotTarget;
+import frc.robot.Constants.VisionConstants.Camera;
+import frc.robot.subsystems.swerve.VisionPoseGate;
+
+/**
+ * Plays a file recorded by {@link VisionRecorder} back into a NetworkTables instance, so that the
+ * vision code can be run against real match data without a robot or a camera.
+ * <p>
+ * Values are published with their recorded timing, shifted to start now and compressed by the
+ * speed factor. The {@link #main(String[])} method replays a file into the vision cameras in a
+ * headless JVM, runs the poses through the {@link VisionPoseGate} and the frames through the target
+ * alignment, and reports the results and the throughput.
+ */
+public class VisionReplayer {
+
+    private final NetworkTableInstance   inst;
+    private final double                 speed;
+
+    private final List<GenericPublisher> publishers = new ArrayList<>();
+    private final List<Byte>             types      = new ArrayList<>();
+
+    private volatile long                valueCount = 0;
+
+    /**
+     * @param inst the instance to publish into, normally a private instance from
+     * {@link NetworkTableInstance#create()}
+     * @param speed the replay speed relative to real time, e.g. 10 for ten times faster. Zero or
+     * less replays as fast as possible.
+     */
+    public VisionReplayer(NetworkTableInstance inst, double speed) {
+        this.inst  = inst;
+        this.speed = speed;
+    }
+
+    /**
+     * Get the names of the cameras in a recording
+     *
+     * @param file the recording
+     * @return the camera (table) names, e.g. "limelight-hugh"
+     * @throws IOException if the file cannot be read
+     */
+    public static Set<String> getCameraNames(File file) throws IOException {
+        Set<String> names     = new LinkedHashSet<>();
+        List<Byte>  fileTypes = new ArrayList<>();
+        try (DataInputStream in = open(file)) {
+            while (true) {
+                byte record;
+                try {
+                    record = in.readByte();
+                }
+                catch (EOFException e) {
+                    return names;
+                }
+                if (record == RECORD_TOPIC) {
+                    int    id    = in.readShort();
+                    String topic = in.readUTF();
+                    byte   type  = in.readByte();
+                    while (fileTypes.size() <= id) {
+                        fileTypes.add(null);
+                    }
+                    fileTypes.set(id, type);
+                    names.add(topic.substring(1, topic.indexOf('/', TOPIC_PREFIX.length())));
+                }
+                else if (record == RECORD_VALUE) {
+                    int id = in.readShort();
+                    in.readLong();
+                    readValue(in, fileTypes.get(id), 0);
+                }
+                else {
+                    throw new IOException("Corrupt recording " + file + ", unknown record type " + record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay a recording into the vision cameras in a private NetworkTables instance, and report the
+     * throughput of the vision processing.
+     * <p>
+     * The poses are gated as on the robot. The recording has no wheel odometry, so the estimate the
+     * gate compares with stands still between frames and moves halfway to each accepted pose. Each
+     * new frame of a camera that sees a target tag is solved for the target it marks, as with
+     * {@link BotTarget#ALL}, with the estimated heading at its capture time.
+     * <p>
+     * Usage: {@code VisionReplayer <recording> [speed]}, or {@code gradlew replayVision
+     * --args="<recording> [speed]"}. The default speed is 10 times real time.
+     *
+     * @param args the recording file and optional speed
+     * @throws Exception on any error
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: VisionReplayer <recording> [speed]");
+            System.exit(1);
+        }
+        File         file    = new File(args[0]);
+        double       speed   = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+
+        // use the configured camera mounts where the names match
+        List<Camera> configs = new ArrayList<>();
+        for (String name : getCameraNames(file)) {
+            Camera config = null;
+            for (Camera camera : Camera.ALL) {
+                if (camera.name.equals(name)) {
+                    config = camera;
+                }
+            }
+            if (config == null) {
+                config                  = new Camera();
+                config.name             = name;
+                config.robotToCamera    = new Transform2d();
+                config.stdDevScale      = 1;
+                config.heightMetres     = Camera.HUGH.heightMetres;
+                config.horizontalFovDeg = Camera.HUGH.horizontalFovDeg;
+                config.verticalFovDeg   = Camera.HUGH.verticalFovDeg;
+            }
+            configs.add(config);
+        }
+
+        NetworkTableInstance    inst     = NetworkTableInstance.create();
+        LimelightCameraRegistry cameras  = new LimelightCameraRegistry(inst, configs.toArray(new Camera[0]));
+        Replay                  results  = new Replay(cameras);
+
+        VisionReplayer          replayer = new VisionReplayer(inst, speed);
+        Thread                  replay   = new Thread(() -> {
+            try {
+                replayer.replay(file);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "vision-replay");
+
+        // run the robot loop while the replay runs, then let the camera workers finish the last frames
+        long                    start    = System.nanoTime();
+        long                    frames   = -1;
+        replay.start();
+        while (replay.isAlive() || frames != processedFrames(cameras)) {
+            frames = processedFrames(cameras);
+            results.loop();
+            Thread.sleep(20);
+        }
+        results.loop();
+        double                  seconds  = (System.nanoTime() - start) / 1e9;
+        long                    values   = replayer.valueCount;
+
+        System.out.printf("Replayed %d values from %s in %.2f s (%.0f values/s) at speed %s%n", values, file, seconds,
+            values / seconds, speed > 0 ? speed + "x" : "max");
+        System.out.printf("Processed %d frames (%.0f frames/s), %d usable poses%n", frames, frames / seconds,
+            results.poses);
+        System.out.printf("Gate: %d poses accepted, %d rejected%n", results.accepted, results.poses - results.accepted);
+        System.out.printf("Alignment: %d frames solved, %d aligned with the target%n", results.solved, results.aligned);
+        for (int i = 0; i < cameras.size(); i++) {
+            LimelightCamera camera = cameras.get(i);
+            System.out.printf("  %s: %d frames, %d poses dropped%n", camera.getName(), camera.getProcessedFrameCount(),
+                camera.getDroppedPositionInfoCount());
+        }
+
+        inst.close();
+        System.exit(0);
+    }
+
+    /**
+     * The robot loop of the replay: the vision pose gate, with a stand-in for the pose estimator, and
+     * the target alignment
+     */
+    private static class Replay {
+
+        private final LimelightCameraRegistry cameras;
+        private final VisionPoseGate          gate       = new VisionPoseGate();
+        private final TargetTagTable          targetTags = new TargetTagTable(FieldLayout.get());
+        private final TargetSolver[]          solvers;
+        private final long[]                  lastFrameMicros;
+
+        private Pose2d                        estimate   = null;
+
+        private long                          poses      = 0;
+        private long                          accepted   = 0;
+        private long                          solved     = 0;
+        private long                          aligned    = 0;
+
+        Replay(LimelightCameraRegistry cameras) {
+            this.cameras    = cameras;
+            solvers         = new TargetSolver[cameras.size()];
+            lastFrameMicros = new long[cameras.size()];
+            for (int i = 0; i < cameras.size(); i++) {
+                solvers[i]         = new TargetSolver(targetTags, cameras.get(i).getCamera());
+                lastFrameMicros[i] = -1;
+            }
+        }
+
+        void loop() {
+            if (estimate != null) {
+                gate.addPose(Timer.getFPGATimestamp(), estimate);
+            }
+
+            for (VisionPositionInfo info : cameras.drainNewPositionInfo()) {
+                poses++;
+                Matrix<N3, N1> stds = gate.evaluate(info);
+                if (stds != null) {
+                    gate.accepted(stds);
+                    estimate = estimate == null ? info.pose() : estimate.interpolate(info.pose(), 0.5);
+                    accepted++;
+                }
+            }
+
+            for (int i = 0; i < cameras.size(); i++) {
+                VisionFrame frame = cameras.get(i).getLatestFrame();
+                if (!frame.isValid() || frame.getTimestampMicros() == lastFrameMicros[i]) {
+                    continue;
+                }
+                lastFrameMicros[i] = frame.getTimestampMicros();
+
+                BotTarget target = targetTags.getTarget(frame.getTid());
+                if (target == BotTarget.NONE) {
+                    continue;
+                }
+                Rotation2d     heading  = gate.getPose(frame.getTimestampSeconds()).map(Pose2d::getRotation).orElse(null);
+                TargetSolution solution = solvers[i].solve(frame, target, heading);
+                if (solution != null) {
+                    solved++;
+                    if (HughVisionSubsystem.isAligned(solution.cameraBearing())) {
+                        aligned++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long processedFrames(LimelightCameraRegistry cameras) {
+        long frames = 0;
+        for (int i = 0; i < cameras.size(); i++) {
+            frames += cameras.get(i).getProcessedFrameCount();
+        }
+        return frames;
+    }
+
+    /**
+     * Replay the file. Blocks until every value has been published.
+     *
+     * @param file the recording
+     * @return the number of values published
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public long replay(File file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            long firstRecordedMicros = Long.MIN_VALUE;
+            long startMicros         = WPIUtilJNI.now();
+
+            while (true) {
+                byte record;
+                try {
+                    record = in.readByte();
+                }
+                catch (EOFException e) {
+                    return valueCount;
+                }
+
+                if (record == RECORD_TOPIC) {
+                    int    id    = in.readShort();
+                    String topic = in.readUTF();
+                    byte   type  = in.readByte();
+                    while (publishers.size() <= id) {
+                        publishers.add(null);
+                        types.add(null);
+                    }
+                    publishers.set(id, inst.getTopic(topic).genericPublish(typeString(type)));
+                    types.set(id, type);
+                    continue;
+                }
+                if (record != RECORD_VALUE) {
+                    throw new IOException("Corrupt recording " + file + ", unknown record type " + record);
+                }
+
+                int  id             = in.readShort();
+                long recordedMicros = in.readLong();
+                if (firstRecordedMicros == Long.MIN_VALUE) {
+                    firstRecordedMicros = recordedMicros;
+                }
+
+                // shift the recorded time to now, compressed by the replay speed
+                long elapsed = recordedMicros - firstRecordedMicros;
+                long time    = startMicros + (speed > 0 ? (long) (elapsed / speed) : elapsed);
+                if (speed > 0) {
+                    waitUntil(time);
+                }
+
+                GenericPublisher  publisher = publishers.get(id);
+                NetworkTableValue value     = readValue(in, types.get(id), time);
+                publisher.set(value);
+                valueCount = valueCount + 1;
+            }
+        }
+        finally {
+            for (GenericPublisher publisher : publishers) {
+                if (publisher != null) {
+                    publisher.close();
+                }
+            }
+            publishers.clear();
+            types.clear();
+        }
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        if (in.readInt() != MAGIC) {
+            in.close();
+            throw new IOException(file + " is not a vision recording");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            in.close();
+            throw new IOException(file + " is recording version " + version + ", expected " + VERSION);
+        }
+        return in;
+    }
+
+    private static void waitUntil(long micros) {
+        long remaining = micros - WPIUtilJNI.now();
+        if (remaining > 1000) {
+            try {
+                Thread.sleep(remaining / 1000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String typeString(byte type) throws IOException {
+        return switch (type) {
+        case TYPE_DOUBLE -> "double";
+        case TYPE_DOUBLE_ARRAY -> "double[]";
+        case TYPE_STRING -> "string";
+        case TYPE_INTEGER -> "int";
+        case TYPE_BOOLEAN -> "boolean";
+        default -> throw new IOException("Unknown value type " + type);
+        };
+    }
+
+    private static NetworkTableValue readValue(DataInputStream in, byte type, long time) throws IOException {
+        return switch (type) {
+        case TYPE_DOUBLE -> NetworkTableValue.makeDouble(in.readDouble(), time);
+        case TYPE_DOUBLE_ARRAY -> {
+            double[] array = new double[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readDouble();
+            }
+            yield NetworkTableValue.makeDoubleArray(array, time);
+        }
+        case TYPE_STRING -> {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            yield NetworkTableValue.makeString(new String(bytes, StandardCharsets.UTF_8), time);
+        }
+        case TYPE_INTEGER -> NetworkTableValue.makeInteger(in.readLong(), time);
+        case TYPE_BOOLEAN -> NetworkTableValue.makeBoolean(in.readBoolean(), time);
+        default -> throw new IOException("Unknown value type " + type);
+        };
+    }
+}
@@ -0,0 +1,482 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks {@link LimelightJsonParser} against the limelight json in src/test/resources/limelight,
+ * field by field and against Jackson, and through empty, truncated and malformed input, for both the
+ * fiducial and the detector results. The last tests check that a steady state parse allocates
+ * nothing, unlike the string scan it replaced and Jackson.
+ * <p>
+ * The json files are synthetic. They follow the layout of the limelight json results, but were
+ * written by hand rather than captured from a camera. Their t6t_rs arrays use the axes the robot code
+ * reads, the same as SimulatedLimelight: element 0 to the right, element 1 down and element 2
+ * forward, in metres, then roll, pitch and yaw in degrees. The other pose arrays are not read.
+ * <p>
+ * Speed is not checked here, since wall-clock time in a unit test depends on the machine and on
+ * whatever else it is running. Measured on a desktop JVM, the parser is not faster than the string
+ * scan: about 3 to 4.5 us for the two tag blob against about 1 us for the scan, which only reads
+ * four fields with a vectorized String.indexOf. Jackson takes 14 to 20 us. What the parser buys is
+ * no garbage, against about 1 KB per blob for the scan and 20 KB for Jackson, and a clean result
+ * for a truncated blob or a tag without a t6t_rs, where the scan throws or reads the wrong field.
+ */
+class LimelightJsonParserTest {
+
+    private static final String[]     CORPUS     = { "speaker-two-tags.json", "amp-one-tag.json", "no-targets.json",
+        "detector-two-notes.json" };
+
+    private static final double       EPSILON    = 1e-9;
+    private static final int          WARMUP     = 20_000;
+    private static final int          ITERATIONS = 20_000;
+
+    private static final ObjectMapper MAPPER     = new ObjectMapper();
+
+    private final LimelightJsonParser parser     = new LimelightJsonParser();
+
+    /** Consumes the results of the allocation loops so that the JIT cannot discard the parses */
+    private long                      sink       = 0;
+
+    @Test
+    void speakerTwoTags() {
+        assertEquals(2, parser.parse(load("speaker-two-tags.json")));
+        assertEquals(2, parser.getTagCount());
+
+        assertEquals(7, parser.getTagId(0));
+        assertEquals(-4.873219, parser.getTx(0), EPSILON);
+        assertEquals(6.224517, parser.getTy(0), EPSILON);
+        assertEquals(0.012134, parser.getTa(0), EPSILON);
+        assertTrue(Double.isNaN(parser.getAmbiguity(0)));
+        double[] t6t = { -0.265331, -0.339424, 3.112046, -2.304441, 12.011208, 1.744379 };
+        for (int e = 0; e < LimelightJsonParser.TARGET_POSE_SIZE; e++) {
+            assertEquals(t6t[e], parser.getTargetPoseRobotSpace(0, e), EPSILON);
+        }
+        // x is forward (element 2) and y is to the right (element 0)
+        assertEquals(3.112046, parser.getTagXTranslation(0), EPSILON);
+        assertEquals(-0.265331, parser.getTagYTranslation(0), EPSILON);
+        assertEquals(Math.hypot(3.112046, -0.265331), parser.getTagDistance(0), EPSILON);
+
+        assertEquals(8, parser.getTagId(1));
+        assertEquals(5.501862, parser.getTx(1), EPSILON);
+        assertEquals(6.093015, parser.getTy(1), EPSILON);
+        assertEquals(0.009853, parser.getTa(1), EPSILON);
+        assertEquals(0.314335, parser.getTargetPoseRobotSpace(1, 0), EPSILON);
+        assertEquals(3.263378, parser.getTargetPoseRobotSpace(1, 2), EPSILON);
+        assertEquals(1.702931, parser.getTargetPoseRobotSpace(1, 5), EPSILON);
+
+        assertTrue(parser.containsTag(7));
+        assertTrue(parser.containsTag(8));
+        assertFalse(parser.containsTag(4));
+        assertEquals(0, parser.getDetectionCount());
+    }
+
+    @Test
+    void ampOneTag() {
+        assertEquals(1, parser.parse(load("amp-one-tag.json")));
+        assertEquals(6, parser.getTagId(0));
+        assertEquals(-0.0125, parser.getTx(0), EPSILON);
+        assertEquals(-3.8812, parser.getTy(0), EPSILON);
+        assertEquals(0.031207, parser.getTa(0), EPSILON);
+        assertEquals(1.1828, parser.getTagXTranslation(0), EPSILON);
+        assertEquals(-0.000258, parser.getTagYTranslation(0), EPSILON);
+        assertEquals(-88.2031, parser.getTargetPoseRobotSpace(0, 5), EPSILON);
+    }
+
+    @Test
+    void noTargets() {
+        assertEquals(0, parser.parse(load("no-targets.json")));
+        assertFalse(parser.containsTag(7));
+    }
+
+    @Test
+    void corpusMatchesJackson() throws JsonProcessingException {
+        for (String name : CORPUS) {
+            String   json      = load(name);
+            JsonNode fiducials = MAPPER.readTree(json).path("Results").path("Fiducial");
+
+            assertEquals(fiducials.size(), parser.parse(json), name);
+            for (int i = 0; i < fiducials.size(); i++) {
+                JsonNode tag = fiducials.get(i);
+                assertEquals(tag.get("fID").asInt(), parser.getTagId(i), name);
+                assertEquals(tag.get("tx").asDouble(), parser.getTx(i), EPSILON, name);
+                assertEquals(tag.get("ty").asDouble(), parser.getTy(i), EPSILON, name);
+                assertEquals(tag.get("ta").asDouble(), parser.getTa(i), EPSILON, name);
+                for (int e = 0; e < LimelightJsonParser.TARGET_POSE_SIZE; e++) {
+                    assertEquals(tag.get("t6t_rs").get(e).asDouble(), parser.getTargetPoseRobotSpace(i, e), EPSILON, name);
+                }
+            }
+        }
+    }
+
+    @Test
+    void detectorTwoNotes() {
+        assertEquals(0, parser.parse(load("detector-two-notes.json")));
+        assertEquals(2, parser.getDetectionCount());
+
+        assertEquals(0, parser.getDetectionClassId(0));
+        assertEquals(0.912345, parser.getDetectionConfidence(0), EPSILON);
+        assertEquals(-3.412087, parser.getDetectionTx(0), EPSILON);
+        assertEquals(-12.508311, parser.getDetectionTy(0), EPSILON);
+        assertEquals(0.784213, parser.getDetectionTa(0), EPSILON);
+
+        assertEquals(0, parser.getDetectionClassId(1));
+        assertEquals(0.633107, parser.getDetectionConfidence(1), EPSILON);
+        assertEquals(17.80152, parser.getDetectionTx(1), EPSILON);
+        assertEquals(-5.093364, parser.getDetectionTy(1), EPSILON);
+        assertEquals(0.129941, parser.getDetectionTa(1), EPSILON);
+    }
+
+    @Test
+    void detectionsMatchJackson() throws JsonProcessingException {
+        for (String name : CORPUS) {
+            String   json       = load(name);
+            JsonNode detections = MAPPER.readTree(json).path("Results").path("Detector");
+
+            parser.parse(json);
+            assertEquals(detections.size(), parser.getDetectionCount(), name);
+            for (int i = 0; i < detections.size(); i++) {
+                JsonNode detection = detections.get(i);
+                assertEquals(detection.get("classID").asInt(), parser.getDetectionClassId(i), name);
+                assertEquals(detection.get("conf").asDouble(), parser.getDetectionConfidence(i), EPSILON, name);
+                assertEquals(detection.get("tx").asDouble(), parser.getDetectionTx(i), EPSILON, name);
+                assertEquals(detection.get("ty").asDouble(), parser.getDetectionTy(i), EPSILON, name);
+                assertEquals(detection.get("ta").asDouble(), parser.getDetectionTa(i), EPSILON, name);
+            }
+        }
+    }
+
+    @Test
+    void detectionWithoutClassOrDirectionIsDropped() {
+        parser.parse("{\"Results\":{\"Detector\":[{\"tx\":1,\"ty\":1},{\"classID\":1,\"ty\":2},"
+            + "{\"classID\":2,\"tx\":3},{\"classID\":null,\"tx\":4,\"ty\":4},{\"classID\":3,\"tx\":5,\"ty\":6}]}}");
+        assertEquals(1, parser.getDetectionCount());
+        assertEquals(3, parser.getDetectionClassId(0));
+        assertEquals(5, parser.getDetectionTx(0), EPSILON);
+        assertEquals(6, parser.getDetectionTy(0), EPSILON);
+        assertTrue(Double.isNaN(parser.getDetectionConfidence(0)));
+        assertTrue(Double.isNaN(parser.getDetectionTa(0)));
+    }
+
+    @Test
+    void detectionsBeyondMaxAreIgnored() {
+        StringBuilder sb = new StringBuilder("{\"Results\":{\"Detector\":[");
+        for (int i = 0; i < LimelightJsonParser.MAX_DETECTIONS + 4; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"classID\":0,\"tx\":").append(i).append(",\"ty\":0}");
+        }
+        sb.append("]}}");
+
+        parser.parse(sb);
+        assertEquals(LimelightJsonParser.MAX_DETECTIONS, parser.getDetectionCount());
+        assertEquals(LimelightJsonParser.MAX_DETECTIONS - 1, parser.getDetectionTx(LimelightJsonParser.MAX_DETECTIONS - 1),
+            EPSILON);
+    }
+
+    @Test
+    void nullAndEmptyInput() {
+        assertEquals(0, parser.parse(null));
+        assertEquals(0, parser.parse(""));
+        assertEquals(0, parser.parse("{}"));
+        assertEquals(0, parser.parse("{\"Results\":{}}"));
+    }
+
+    @Test
+    void emptyAndMissingArrays() {
+        assertEquals(0, parser.parse("{\"Results\":{\"Fiducial\":[],\"Detector\":[],\"v\":0}}"));
+        assertEquals(0, parser.parse("{\"Results\":{\"Classifier\":[],\"Retro\":[],\"pID\":1,\"v\":0}}"));
+        assertEquals(0, parser.getDetectionCount());
+
+        // a fiducial with an empty t6t_rs, and one without it
+        assertEquals(2, parser.parse("{\"Results\":{\"Fiducial\":[{\"fID\":1,\"t6t_rs\":[],\"tx\":2},{\"fID\":2,\"tx\":3}]}}"));
+        for (int i = 0; i < 2; i++) {
+            for (int e = 0; e < LimelightJsonParser.TARGET_POSE_SIZE; e++) {
+                assertTrue(Double.isNaN(parser.getTargetPoseRobotSpace(i, e)));
+            }
+            assertTrue(Double.isNaN(parser.getTy(i)));
+            assertTrue(Double.isNaN(parser.getTa(i)));
+        }
+        assertEquals(2, parser.getTx(0), EPSILON);
+        assertEquals(3, parser.getTx(1), EPSILON);
+    }
+
+    @Test
+    void ambiguityAndExtraPoseElements() {
+        assertEquals(1, parser.parse("{\"Results\":{\"Fiducial\":[{\"ambiguity\":0.125,\"fID\":4,"
+            + "\"t6t_rs\":[1,2,3,4,5,6,7,8]}]}}"));
+        assertEquals(0.125, parser.getAmbiguity(0), EPSILON);
+        assertEquals(6, parser.getTargetPoseRobotSpace(0, 5), EPSILON);
+    }
+
+    @Test
+    void tagWithoutIdIsDropped() {
+        assertEquals(1, parser.parse("{\"Results\":{\"Fiducial\":[{\"tx\":1},{\"fID\":null,\"tx\":2},{\"fID\":5,\"tx\":3}]}}"));
+        assertEquals(5, parser.getTagId(0));
+        assertEquals(3, parser.getTx(0), EPSILON);
+    }
+
+    @Test
+    void tagsBeyondMaxAreIgnored() {
+        StringBuilder sb = new StringBuilder("{\"Results\":{\"Fiducial\":[");
+        for (int id = 1; id <= LimelightJsonParser.MAX_TAGS + 4; id++) {
+            sb.append(id > 1 ? "," : "").append("{\"fID\":").append(id).append(",\"tx\":").append(id).append('}');
+        }
+        sb.append("]}}");
+
+        assertEquals(LimelightJsonParser.MAX_TAGS, parser.parse(sb));
+        assertEquals(LimelightJsonParser.MAX_TAGS, parser.getTagId(LimelightJsonParser.MAX_TAGS - 1));
+        assertFalse(parser.containsTag(LimelightJsonParser.MAX_TAGS + 1));
+    }
+
+    @Test
+    void numberFormats() {
+        assertEquals(1, parser.parse("{\"Results\":{\"Fiducial\":[{\"fID\": 12 ,\"tx\":-1.5e-3,\"ty\":+2E2,"
+            + "\"ta\":1234567890.123456789012,\"t6t_rs\":[ 0 , -0.0 ,1e0,\t12.5E+1,\n-7,3.25]}]}}"));
+        assertEquals(12, parser.getTagId(0));
+        assertEquals(-0.0015, parser.getTx(0), EPSILON);
+        assertEquals(200, parser.getTy(0), EPSILON);
+        assertEquals(1234567890.123456789012, parser.getTa(0), 1e-6);
+        double[] t6t = { 0, 0, 1, 125, -7, 3.25 };
+        for (int e = 0; e < LimelightJsonParser.TARGET_POSE_SIZE; e++) {
+            assertEquals(t6t[e], parser.getTargetPoseRobotSpace(0, e), EPSILON);
+        }
+    }
+
+    @Test
+    void escapedStrings() {
+        // keys and arrays quoted inside strings, escaped quotes and a string ending in an escaped backslash
+        String json = "{\"note\":\"\\\"Fiducial\\\":[{\\\"fID\\\":98}]\",\"Results\":{\"Fiducial\":["
+            + "{\"fam\":\"36H11\\\"},{\\\"fID\\\":99\",\"fID\":3,\"path\":\"C:\\\\\",\"tx\":1.5,\"we\\\"ird\":[{}],\"ty\":2.5}]}}";
+
+        assertEquals(1, parser.parse(json));
+        assertEquals(3, parser.getTagId(0));
+        assertEquals(1.5, parser.getTx(0), EPSILON);
+        assertEquals(2.5, parser.getTy(0), EPSILON);
+        assertFalse(parser.containsTag(98));
+        assertFalse(parser.containsTag(99));
+    }
+
+    @Test
+    void truncatedInputKeepsCompleteTags() {
+        String json      = load("speaker-two-tags.json");
+        int    endFirst  = json.indexOf("},{\"fID\":8") + 1;
+        int    endSecond = json.indexOf("}],\"Retro\"") + 1;
+
+        for (int length = 0; length < endSecond; length++) {
+            int count = parser.parse(json.substring(0, length));
+            assertEquals(length < endFirst ? 0 : 1, count, "prefix of " + length);
+            if (count == 1) {
+                assertEquals(7, parser.getTagId(0));
+                assertEquals(-4.873219, parser.getTx(0), EPSILON);
+                assertEquals(1.744379, parser.getTargetPoseRobotSpace(0, 5), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    void truncatedInputKeepsCompleteDetections() {
+        String json      = load("detector-two-notes.json");
+        int    endFirst  = json.indexOf("},{\"class\"") + 1;
+        int    endSecond = json.indexOf("}],\"Fiducial\"") + 1;
+
+        for (int length = 0; length < endSecond; length++) {
+            parser.parse(json.substring(0, length));
+            int count = parser.getDetectionCount();
+            assertEquals(length < endFirst ? 0 : 1, count, "prefix of " + length);
+            if (count == 1) {
+                assertEquals(-3.412087, parser.getDetectionTx(0), EPSILON);
+                assertEquals(0.784213, parser.getDetectionTa(0), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    void malformedInput() {
+        String[] inputs = { "not json", "{", "}}]]", "[[[", "\"", "\"\\", "{\"Results\":{\"Fiducial\":",
+            "{\"Results\":{\"Fiducial\":[{\"fID\":}]}}", "{\"Results\":{\"Fiducial\":[{\"fID\":-,\"tx\":e}]}}",
+            "{\"Results\":{\"Fiducial\":[{\"fID\":1,\"t6t_rs\":[1,,x,]2]}]}}", "{\"Results\":{\"Fiducial\":{\"fID\":1}}}" };
+        for (String input : inputs) {
+            int count = parser.parse(input);
+            assertTrue(count >= 0 && count <= 1, input);
+        }
+
+        // a bad blob does not affect the next one
+        assertEquals(2, parser.parse(load("speaker-two-tags.json")));
+    }
+
+    @Test
+    void resultsAreReplacedOnEachParse() {
+        String speaker = load("speaker-two-tags.json");
+        assertEquals(2, parser.parse(speaker));
+        assertEquals(1, parser.parse(load("amp-one-tag.json")));
+        assertFalse(parser.containsTag(7));
+        assertEquals(0, parser.parse(load("no-targets.json")));
+        assertEquals(2, parser.parse(speaker));
+        assertEquals(-4.873219, parser.getTx(0), EPSILON);
+
+        parser.parse(load("detector-two-notes.json"));
+        assertEquals(2, parser.getDetectionCount());
+        assertEquals(2, parser.parse(speaker));
+        assertEquals(0, parser.getDetectionCount());
+    }
+
+    @Test
+    void steadyStateDetectorParseDoesNotAllocate() throws JsonProcessingException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        String json = load("detector-two-notes.json");
+
+        for (int i = 0; i < WARMUP; i++) {
+            sink += parser.parse(json) + parser.getDetectionCount() + jacksonParseDetections(json);
+        }
+
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += parser.parse(json) + parser.getDetectionCount();
+        }
+        long parserBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+        start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jacksonParseDetections(json);
+        }
+        long jacksonBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+        assertTrue(parserBytes < ITERATIONS, "parser allocated " + parserBytes + " bytes");
+        assertTrue(jacksonBytes > parserBytes);
+    }
+
+    @Test
+    void steadyStateParseDoesNotAllocate() throws JsonProcessingException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        String json = load("speaker-two-tags.json");
+
+        for (int i = 0; i < WARMUP; i++) {
+            sink += parser.parse(json) + legacyParse(json).length + jacksonParse(json);
+        }
+
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += parser.parse(json);
+        }
+        long parserBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+        start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += legacyParse(json).length;
+        }
+        long legacyBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+        start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += jacksonParse(json);
+        }
+        long jacksonBytes = threads.getCurrentThreadAllocatedBytes() - start;
+
+        // less than a byte a parse: nothing is allocated per parse, only by the measurement itself
+        assertTrue(parserBytes < ITERATIONS, "parser allocated " + parserBytes + " bytes");
+        assertTrue(legacyBytes > parserBytes);
+        assertTrue(jacksonBytes > parserBytes);
+    }
+
+    private static String load(String name) {
+        try (InputStream in = LimelightJsonParserTest.class.getResourceAsStream("/limelight/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the same fields with Jackson, as a general purpose json library would
+     *
+     * @return the number of tags
+     */
+    private static int jacksonParse(String json) throws JsonProcessingException {
+        JsonNode fiducials = MAPPER.readTree(json).path("Results").path("Fiducial");
+        double   sum       = 0;
+        for (JsonNode tag : fiducials) {
+            sum += tag.get("fID").asInt() + tag.get("tx").asDouble() + tag.get("t6t_rs").get(0).asDouble()
+                + tag.get("t6t_rs").get(2).asDouble();
+        }
+        return sum == 0 ? 0 : fiducials.size();
+    }
+
+    /**
+     * Read the detector fields with Jackson
+     *
+     * @return the number of detections
+     */
+    private static int jacksonParseDetections(String json) throws JsonProcessingException {
+        JsonNode detections = MAPPER.readTree(json).path("Results").path("Detector");
+        double   sum        = 0;
+        for (JsonNode detection : detections) {
+            sum += detection.get("classID").asInt() + detection.get("conf").asDouble() + detection.get("tx").asDouble()
+                + detection.get("ty").asDouble() + detection.get("ta").asDouble();
+        }
+        return sum == 0 ? 0 : detections.size();
+    }
+
+    /**
+     * The string scan HughVisionSubsystem used before LimelightJsonParser, kept to compare against
+     */
+    private static AprilTagInfo[] legacyParse(String jsonStr) {
+        ArrayList<AprilTagInfo> tags  = new ArrayList<AprilTagInfo>();
+        int                     index = 0;
+        while (index != -1) {
+            index = jsonStr.indexOf("\"fID\":", index);
+            if (index == -1)
+                break; // No more fID found
+
+            // Get Tag ID
+            int    fIDStart    = index + 6;
+            int    fIDEnd      = jsonStr.indexOf(",", fIDStart);
+            String fID         = jsonStr.substring(fIDStart, fIDEnd).trim();
+
+            // Get yTranslation (1st element of array)
+            int    yTransIndex = jsonStr.indexOf("\"t6t_rs\":", fIDEnd);
+            int    yTransStart = yTransIndex + 10;
+            int    yTransEnd   = jsonStr.indexOf(",", yTransStart);
+            String yTransStr   = jsonStr.substring(yTransStart, yTransEnd).trim();
+
+            // Get xTranslation (3rd element of array)
+            int    xTransIndex = jsonStr.indexOf(",", yTransEnd + 1);
+            int    xTransStart = xTransIndex + 1;
+            int    xTransEnd   = jsonStr.indexOf(",", xTransStart);
+            String xTransStr   = jsonStr.substring(xTransStart, xTransEnd).trim();
+
+            // Get xOffset
+            int    txIndex     = jsonStr.indexOf("\"tx\":", fIDEnd);
+            int    txStart     = txIndex + 5;
+            int    txEnd       = jsonStr.indexOf(",", txStart);
+            if (txEnd == -1) { // Check if tx is the last value before the object ends
+                txEnd = jsonStr.indexOf("}", txStart);
+            }
+            String tx      = jsonStr.substring(txStart, txEnd).trim();
+
+            int    tagId   = Integer.parseInt(fID);
+            double xOffset = Double.parseDouble(tx);
+            double xTrans  = Double.parseDouble(xTransStr);
+            double yTrans  = Double.parseDouble(yTransStr);
+            tags.add(new AprilTagInfo(tagId, xOffset, xTrans, yTrans, Math.hypot(xTrans, yTrans)));
+
+            index = txEnd; // Move index to end of the current tx to find the next fID
+        }
+        return tags.toArray(new AprilTagInfo[tags.size()]);
+    }
+}